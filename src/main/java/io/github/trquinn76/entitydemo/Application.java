@@ -5,10 +5,13 @@ import com.vaadin.flow.component.page.Push;
 import com.vaadin.flow.theme.Theme;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
 import org.springframework.scheduling.annotation.EnableAsync;
 
 @SuppressWarnings("serial")
-@SpringBootApplication
+// R2DBC is only used by the ReactiveEntityRepository, which creates its own connection pool. The auto-configured
+// ConnectionFactory would stop Spring Boot configuring the JDBC DataSource used by JPA.
+@SpringBootApplication(exclude = R2dbcAutoConfiguration.class)
 @EnableAsync
 @Push
 @Theme("default")
@@ -33,6 +33,11 @@ public class Entity {
         return id;
     }
 
+    // package private, as the Id is not editable. Only used to create copies of an EntitySnapshot.
+    void setId(Long id) {
+        this.id = id;
+    }
+
     public String getName() {
         return name;
     }
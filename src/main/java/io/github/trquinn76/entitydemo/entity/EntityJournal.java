@@ -0,0 +1,568 @@
+package io.github.trquinn76.entitydemo.entity;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * An append-only binary journal of the changes made to the {@link EntityReadModel}, along with periodic snapshots of
+ * it, so that a restarted node can rebuild the read model without querying every {@link Entity} from the repository.
+ *
+ * The journal is written through a memory mapped {@link FileChannel}, a region at a time. Each record is prefixed by
+ * its length and a CRC32 checksum. Snapshots are written to a temporary file and then moved into place, and are read
+ * back by mapping the file. Each snapshot starts a new journal file, and the files it replaces are deleted once it has
+ * been written. Periodic snapshots are written in the background, while changes are appended to the new journal.
+ *
+ * On a clean shutdown a close record is appended to the journal. After a crash there is no close record, and the
+ * journal is replayed up to its last complete record whose checksum matches, so a record torn by the crash is dropped.
+ * A journal with a gap in its versions is not recovered at all. The {@link EntityService} then only uses the recovered
+ * read model if its {@link Entity} count and largest Id match the repository, otherwise it reloads everything from the
+ * repository.
+ *
+ * These checks catch {@link Entity}'s added or removed without being journaled, but not updates to existing ones. So
+ * the journal must not be used if anything else writes to the repository, and updates whose records were lost when the
+ * host itself crashed, rather than just the process, are not detected.
+ *
+ * If writing the journal or a snapshot fails, journaling stops and all the snapshots and journals are deleted, so that
+ * the next restart loads everything from the repository rather than recovering a read model missing the later changes.
+ *
+ * This is only created when {@code entitydemo.journal.enabled} is true, and is only useful with a persistent
+ * repository. All methods except {@link #snapshot(long, Collection)} are called by the {@link EntityService} while
+ * holding its write lock.
+ */
+@Component
+@ConditionalOnProperty(name = "entitydemo.journal.enabled", havingValue = "true")
+public class EntityJournal implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(EntityJournal.class);
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String JOURNAL_PREFIX = "journal-";
+    private static final String SUFFIX = ".bin";
+
+    private static final int SNAPSHOT_MAGIC = 0x45445331; // "EDS1"
+
+    private static final byte UPSERT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLOSE = 3;
+
+    // the length and checksum written before each record.
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final Path directory;
+    private final int regionSize;
+    private final int snapshotInterval;
+
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer recordBuffer = ByteBuffer.allocate(512);
+
+    private @Nullable FileChannel channel = null;
+    private @Nullable MappedByteBuffer region = null;
+    private long regionStart = 0L;
+    private int recordsSinceSnapshot = 0;
+    private boolean snapshotInProgress = false;
+    private boolean failed = false;
+
+    EntityJournal(@Value("${entitydemo.journal.directory:data/journal}") String directory,
+            @Value("${entitydemo.journal.region-size:16MB}") DataSize regionSize,
+            @Value("${entitydemo.journal.snapshot-interval:10000}") int snapshotInterval) {
+        this.directory = Path.of(directory);
+        this.regionSize = Math.toIntExact(regionSize.toBytes());
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Rebuilds the read model from the latest snapshot and the journal written after it.
+     *
+     * @return the recovered {@link EntitySnapshot}'s, or null if there is no usable snapshot and journal.
+     */
+    public synchronized @Nullable Recovered recover() {
+        try {
+            Path snapshotFile = latest(SNAPSHOT_PREFIX);
+            if (snapshotFile == null) {
+                return null;
+            }
+            Map<Long, EntitySnapshot> snapshots = new HashMap<>();
+            long version = readSnapshot(snapshotFile, snapshots);
+            if (version < 0L) {
+                log.warn("Ignoring the corrupt entity snapshot {}", snapshotFile);
+                return null;
+            }
+
+            boolean closed = false;
+            boolean complete = true;
+            for (Path journalFile : list(JOURNAL_PREFIX)) {
+                if (versionOf(journalFile) <= version) {
+                    continue;
+                }
+                if (versionOf(journalFile) != version + 1 || closed || !complete) {
+                    log.warn("Entity journal {} does not follow on from version {}", journalFile, version);
+                    return null;
+                }
+                JournalTail tail = replay(journalFile, version, snapshots);
+                if (tail == null) {
+                    log.warn("Entity journal {} is corrupt", journalFile);
+                    return null;
+                }
+                version = tail.version();
+                closed = tail.closed();
+                complete = tail.complete();
+            }
+            if (!closed) {
+                log.info("The entity journal was not closed cleanly, it has been replayed up to version {}", version);
+            }
+            return new Recovered(version, List.copyOf(snapshots.values()), closed);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to recover the entity journal", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a snapshot of the read model, and starts a new journal to follow it. All other snapshots and journals are
+     * deleted.
+     *
+     * @param version   the version of the read model.
+     * @param snapshots all the {@link EntitySnapshot}'s in the read model at that version.
+     */
+    public synchronized void start(long version, Collection<EntitySnapshot> snapshots) {
+        try {
+            Files.createDirectories(directory);
+            closeChannel();
+            writeSnapshot(version, snapshots);
+            // the new snapshot covers every change in the existing journals. Any other snapshot is deleted, even one
+            // with a later version, eg: from before a reload which restarted the versions.
+            deleteAllExcept(JOURNAL_PREFIX, -1L);
+            deleteAllExcept(SNAPSHOT_PREFIX, version);
+            openJournal(version);
+            failed = false;
+        } catch (IOException | UncheckedIOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Starts a new journal for the changes after the given version, so that a snapshot at that version can be written
+     * by {@link #snapshot(long, Collection)} while changes continue to be appended. The current journal is kept until
+     * the snapshot has been written, so the changes it holds are recovered if the snapshot is not.
+     *
+     * @param version the version of the read model, which must be the version of the last change appended.
+     */
+    public synchronized void rotate(long version) {
+        if (region == null || failed) {
+            return;
+        }
+        try {
+            // the current region is left to be written back by the OS, rather than forced while the caller waits.
+            region = null;
+            closeChannel();
+            openJournal(version);
+            snapshotInProgress = true;
+        } catch (IOException | UncheckedIOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the read model, and deletes the snapshots and journals it replaces. This is not called
+     * while holding the write lock, as writing a large read model is slow, and changes may be appended meanwhile.
+     *
+     * @param version   the version passed to {@link #rotate(long)}.
+     * @param snapshots all the {@link EntitySnapshot}'s in the read model at that version. Must not be modified.
+     */
+    public void snapshot(long version, Collection<EntitySnapshot> snapshots) {
+        try {
+            Path temporary = writeSnapshotFile(version, snapshots);
+            synchronized (this) {
+                snapshotInProgress = false;
+                if (failed) {
+                    // the journal has been deleted since the rotation, so this snapshot would be missing changes.
+                    Files.delete(temporary);
+                    return;
+                }
+                Files.move(temporary, directory.resolve(fileName(SNAPSHOT_PREFIX, version)),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                deleteAllExcept(SNAPSHOT_PREFIX, version);
+                deleteJournalsUpTo(version);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            synchronized (this) {
+                snapshotInProgress = false;
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * @param snapshot the {@link EntitySnapshot} which was published.
+     */
+    public synchronized void appendUpsert(EntitySnapshot snapshot) {
+        ByteBuffer buffer = startRecord(UPSERT, snapshot.version(), snapshot.id());
+        buffer = writeEntity(buffer, snapshot);
+        append(buffer);
+    }
+
+    /**
+     * @param id      the Id of the {@link Entity} which was removed.
+     * @param version the version of the read model after the removal.
+     */
+    public synchronized void appendRemove(long id, long version) {
+        append(startRecord(REMOVE, version, id));
+    }
+
+    /**
+     * @return true if enough records have been appended since the last snapshot that a new one should be started.
+     */
+    public synchronized boolean isSnapshotDue() {
+        return !failed && !snapshotInProgress && recordsSinceSnapshot >= snapshotInterval;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (region != null && !failed) {
+            // the version of the close record is not used, it only marks the journal as complete.
+            append(startRecord(CLOSE, 0L, 0L));
+        }
+        closeChannel();
+    }
+
+    private ByteBuffer startRecord(byte type, long version, long id) {
+        recordBuffer.clear();
+        recordBuffer.put(type).putLong(version).putLong(id);
+        return recordBuffer;
+    }
+
+    private void append(ByteBuffer record) {
+        if (region == null || failed) {
+            return;
+        }
+        record.flip();
+        crc.reset();
+        crc.update(record.duplicate());
+
+        try {
+            int length = RECORD_HEADER_BYTES + record.remaining();
+            if (region.remaining() < length) {
+                // map the next region starting exactly at the end of this record, so records are never split by gaps.
+                long next = regionStart + region.position();
+                region.force();
+                region = channel.map(FileChannel.MapMode.READ_WRITE, next, Math.max(regionSize, length));
+                regionStart = next;
+            }
+            region.putInt(record.remaining()).putInt((int) crc.getValue()).put(record);
+            recordsSinceSnapshot++;
+        } catch (IOException | UncheckedIOException e) {
+            fail(e);
+        }
+    }
+
+    private ByteBuffer writeEntity(ByteBuffer buffer, EntitySnapshot snapshot) {
+        byte[] name = bytesOf(snapshot.name());
+        byte[] description = bytesOf(snapshot.description());
+        int required = buffer.position() + 2 * Double.BYTES + 2 * Integer.BYTES + length(name) + length(description);
+        if (required > buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(required, buffer.capacity() * 2));
+            buffer.flip();
+            larger.put(buffer);
+            recordBuffer = larger;
+            buffer = larger;
+        }
+        buffer.putDouble(snapshot.latitudeDegrees()).putDouble(snapshot.longitudeDegrees());
+        putBytes(buffer, name);
+        putBytes(buffer, description);
+        return buffer;
+    }
+
+    private void openJournal(long version) throws IOException {
+        Path journalFile = directory.resolve(fileName(JOURNAL_PREFIX, version + 1));
+        channel = FileChannel.open(journalFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        regionStart = 0L;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, regionSize);
+        recordsSinceSnapshot = 0;
+    }
+
+    private void writeSnapshot(long version, Collection<EntitySnapshot> snapshots) throws IOException {
+        Files.move(writeSnapshotFile(version, snapshots), directory.resolve(fileName(SNAPSHOT_PREFIX, version)),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // writes the snapshot to a temporary file, which is returned to be moved into place.
+    private Path writeSnapshotFile(long version, Collection<EntitySnapshot> snapshots) throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT_PREFIX + "tmp" + SUFFIX);
+        CRC32 checksum = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(
+                new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)), checksum))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(version);
+            out.writeInt(snapshots.size());
+            for (EntitySnapshot snapshot : snapshots) {
+                out.writeLong(snapshot.id());
+                out.writeLong(snapshot.version());
+                out.writeDouble(snapshot.latitudeDegrees());
+                out.writeDouble(snapshot.longitudeDegrees());
+                writeBytes(out, bytesOf(snapshot.name()));
+                writeBytes(out, bytesOf(snapshot.description()));
+            }
+            // the checksum itself is not included in the checksum.
+            out.writeLong(checksum.getValue());
+        }
+        try (FileChannel written = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            written.force(true);
+        }
+        return temporary;
+    }
+
+    // returns the version of the snapshot, or -1 if it is corrupt.
+    private static long readSnapshot(Path file, Map<Long, EntitySnapshot> snapshots) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, 0L, in.size());
+            if (mapped.remaining() < Integer.BYTES + Long.BYTES + Integer.BYTES + Long.BYTES) {
+                return -1L;
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(mapped.slice(0, mapped.limit() - Long.BYTES));
+            if (checksum.getValue() != mapped.getLong(mapped.limit() - Long.BYTES)
+                    || mapped.getInt() != SNAPSHOT_MAGIC) {
+                return -1L;
+            }
+            long version = mapped.getLong();
+            int count = mapped.getInt();
+            for (int i = 0; i < count; i++) {
+                long id = mapped.getLong();
+                long snapshotVersion = mapped.getLong();
+                double latitude = mapped.getDouble();
+                double longitude = mapped.getDouble();
+                String name = getString(mapped);
+                String description = getString(mapped);
+                snapshots.put(id, new EntitySnapshot(id, name, latitude, longitude, description, snapshotVersion));
+            }
+            return version;
+        }
+    }
+
+    // returns the last version replayed, or null if the journal is corrupt. Replay stops at the first torn record.
+    private static @Nullable JournalTail replay(Path file, long version, Map<Long, EntitySnapshot> snapshots)
+            throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, 0L, in.size());
+            CRC32 checksum = new CRC32();
+            while (mapped.remaining() >= RECORD_HEADER_BYTES) {
+                int length = mapped.getInt();
+                if (length == 0) {
+                    // the rest of the mapped region has not been written.
+                    break;
+                }
+                int expectedChecksum = mapped.getInt();
+                if (length < 0 || length > mapped.remaining()) {
+                    log.warn("Entity journal {} ends with a truncated record after version {}", file, version);
+                    return new JournalTail(version, false, false);
+                }
+                ByteBuffer record = mapped.slice(mapped.position(), length);
+                mapped.position(mapped.position() + length);
+                checksum.reset();
+                checksum.update(record.duplicate());
+                if ((int) checksum.getValue() != expectedChecksum) {
+                    log.warn("Entity journal {} has a torn record after version {}", file, version);
+                    return new JournalTail(version, false, false);
+                }
+
+                byte type = record.get();
+                long recordVersion = record.getLong();
+                long id = record.getLong();
+                if (type == CLOSE) {
+                    return new JournalTail(version, true, true);
+                }
+                if (recordVersion != version + 1) {
+                    return null;
+                }
+                version = recordVersion;
+                if (type == UPSERT) {
+                    double latitude = record.getDouble();
+                    double longitude = record.getDouble();
+                    String name = getString(record);
+                    String description = getString(record);
+                    snapshots.put(id, new EntitySnapshot(id, name, latitude, longitude, description, version));
+                } else if (type == REMOVE) {
+                    snapshots.remove(id);
+                } else {
+                    return null;
+                }
+            }
+            return new JournalTail(version, false, true);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private void fail(Exception e) {
+        log.error("Failed to write the entity journal, journaling is disabled until the next restart", e);
+        failed = true;
+        // the region is dropped without forcing it, as it is no longer wanted.
+        region = null;
+        closeChannel();
+        // the changes from now on are not journaled, but an unclosed journal is replayed as if after a crash. So the
+        // files are deleted, or the next restart would recover the read model without them.
+        try {
+            deleteAllExcept(SNAPSHOT_PREFIX, -1L);
+            deleteAllExcept(JOURNAL_PREFIX, -1L);
+        } catch (IOException | RuntimeException deleteFailure) {
+            log.error("Failed to delete the entity journal in {}, it must be deleted before the next restart",
+                    directory, deleteFailure);
+        }
+    }
+
+    private void closeChannel() {
+        if (region != null) {
+            region.force();
+            region = null;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close the entity journal", e);
+            }
+            channel = null;
+        }
+    }
+
+    private @Nullable Path latest(String prefix) throws IOException {
+        List<Path> files = list(prefix);
+        return files.isEmpty() ? null : files.get(files.size() - 1);
+    }
+
+    // lists the files with the given prefix, ordered by version.
+    private List<Path> list(String prefix) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> matching = new ArrayList<>(files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(prefix) && name.endsWith(SUFFIX) && versionOf(file) >= 0L;
+            }).toList());
+            matching.sort(null);
+            return matching;
+        }
+    }
+
+    private void deleteAllExcept(String prefix, long version) throws IOException {
+        for (Path file : list(prefix)) {
+            if (versionOf(file) != version) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    // deletes the journals starting at or before the given version, which are covered by a snapshot at that version.
+    private void deleteJournalsUpTo(long version) throws IOException {
+        for (Path file : list(JOURNAL_PREFIX)) {
+            if (versionOf(file) <= version) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    // versions are zero padded, so the files sort by version.
+    private static String fileName(String prefix, long version) {
+        return String.format("%s%020d%s", prefix, version, SUFFIX);
+    }
+
+    private static long versionOf(Path file) {
+        String name = file.getFileName().toString();
+        int start = name.indexOf('-') + 1;
+        try {
+            return Long.parseLong(name.substring(start, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    private static @Nullable byte[] bytesOf(@Nullable String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(@Nullable byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    // strings are written as their length in bytes, or -1 for null, followed by their UTF-8 bytes.
+    private static void putBytes(ByteBuffer buffer, @Nullable byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, @Nullable byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static @Nullable String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The read model recovered from the journal.
+     *
+     * @param version   the version of the read model after the last change in the journal.
+     * @param snapshots the {@link EntitySnapshot}'s in the read model at that version.
+     * @param clean     true if the journal was closed cleanly, false if it was replayed after a crash.
+     */
+    public record Recovered(long version, List<EntitySnapshot> snapshots, boolean clean) {
+
+        /**
+         * @return the largest Id of the recovered {@link EntitySnapshot}'s, or 0 if there are none.
+         */
+        public long maxId() {
+            long maxId = 0L;
+            for (EntitySnapshot snapshot : snapshots) {
+                maxId = Math.max(maxId, snapshot.id());
+            }
+            return maxId;
+        }
+    }
+
+    // complete is false if the replay stopped at a torn record, rather than at the end of the written records.
+    private record JournalTail(long version, boolean closed, boolean complete) {}
+}
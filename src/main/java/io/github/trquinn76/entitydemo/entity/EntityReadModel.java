@@ -0,0 +1,155 @@
+package io.github.trquinn76.entitydemo.entity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The shared read model of all {@link Entity}'s, held as immutable {@link EntitySnapshot}'s.
+ *
+ * There is a single instance of this model per application, and every session references the same
+ * {@link EntitySnapshot} instances from it, rather than holding their own copies of the {@link Entity}'s. Sessions
+ * only need to hold the Ids of the {@link Entity}'s they are displaying.
+ *
+ * Every change to the model increments its version, and the new {@link EntitySnapshot} records the version at which it
+ * was published. Changes are only made by the {@link EntityService}.
+ */
+@Component
+public class EntityReadModel {
+
+    private final Map<Long, EntitySnapshot> snapshots = new ConcurrentHashMap<>();
+    private volatile long version = 0L;
+    private volatile @Nullable SortedSnapshots sortedSnapshots = null;
+
+    public EntityReadModel(MeterRegistry meterRegistry) {
+        Gauge.builder("entitydemo.readmodel.entities", snapshots, Map::size)
+                .description("The number of entities held in the shared read model").register(meterRegistry);
+        Gauge.builder("entitydemo.readmodel.version", this, EntityReadModel::getVersion)
+                .description("The current version of the shared read model").register(meterRegistry);
+    }
+
+    /**
+     * @return the current version of the model.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @param id the Id of the {@link EntitySnapshot} to get. May not be null.
+     * @return the current {@link EntitySnapshot} with the given Id, or null if there is no such {@link Entity}.
+     */
+    public @Nullable EntitySnapshot get(Long id) {
+        Objects.requireNonNull(id);
+        return snapshots.get(id);
+    }
+
+    /**
+     * @return an unmodifiable list of all the current {@link EntitySnapshot}'s, ordered by Id. May be empty.
+     */
+    public List<EntitySnapshot> getAll() {
+        long currentVersion = version;
+        SortedSnapshots sorted = sortedSnapshots;
+        if (sorted == null || sorted.version() != currentVersion) {
+            List<EntitySnapshot> list = new ArrayList<>(snapshots.values());
+            list.sort(Comparator.comparing(EntitySnapshot::id));
+            sorted = new SortedSnapshots(currentVersion, List.copyOf(list));
+            sortedSnapshots = sorted;
+        }
+        return sorted.snapshots();
+    }
+
+    /**
+     * @return the number of {@link EntitySnapshot}'s in the model.
+     */
+    public int size() {
+        return snapshots.size();
+    }
+
+    /**
+     * Gets the shared {@link EntitySnapshot} for the given {@link Entity}, so that callers holding on to the result do
+     * not retain a copy of their own.
+     *
+     * @param entity an {@link Entity} loaded from the repository. May not be null.
+     * @return the shared {@link EntitySnapshot} if it matches the given {@link Entity}, otherwise a new unpublished
+     *         {@link EntitySnapshot}.
+     */
+    public EntitySnapshot intern(Entity entity) {
+        Objects.requireNonNull(entity);
+        EntitySnapshot snapshot = entity.getId() == null ? null : snapshots.get(entity.getId());
+        if (snapshot != null && snapshot.matches(entity)) {
+            return snapshot;
+        }
+        return EntitySnapshot.of(entity, 0L);
+    }
+
+    /**
+     * Publishes a new {@link EntitySnapshot} of the given {@link Entity}, replacing any previous snapshot with the same
+     * Id.
+     *
+     * @param entity the {@link Entity} to publish. It must have been saved to the repository, and so have an Id.
+     * @return the published {@link EntitySnapshot}.
+     */
+    synchronized EntitySnapshot publish(Entity entity) {
+        Objects.requireNonNull(entity.getId());
+        EntitySnapshot snapshot = EntitySnapshot.of(entity, version + 1);
+        snapshots.put(snapshot.id(), snapshot);
+        version = snapshot.version();
+        return snapshot;
+    }
+
+    /**
+     * Removes the {@link EntitySnapshot} with the given Id.
+     *
+     * @param id the Id of the {@link EntitySnapshot} to remove. May not be null.
+     * @return true if the {@link EntitySnapshot} was removed, and so the version changed.
+     */
+    synchronized boolean remove(Long id) {
+        if (snapshots.remove(Objects.requireNonNull(id)) != null) {
+            version++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Publishes each of the given {@link Entity}'s which differ from the current model.
+     *
+     * @param entities the {@link Entity}'s to load, typically all those in the repository. May not be null.
+     */
+    synchronized void load(Iterable<Entity> entities) {
+        for (Entity entity : entities) {
+            EntitySnapshot current = snapshots.get(entity.getId());
+            if (current == null || !current.matches(entity)) {
+                publish(entity);
+            }
+        }
+    }
+
+    /**
+     * Replaces the whole model, eg: with the model recovered from the {@link EntityJournal}.
+     *
+     * @param restoredVersion the version of the model being restored.
+     * @param restored        all the {@link EntitySnapshot}'s in the model at that version.
+     */
+    synchronized void restore(long restoredVersion, Collection<EntitySnapshot> restored) {
+        snapshots.clear();
+        for (EntitySnapshot snapshot : restored) {
+            snapshots.put(snapshot.id(), snapshot);
+        }
+        version = restoredVersion;
+    }
+
+    // the list of all snapshots is cached against the version it was built for.
+    private record SortedSnapshots(long version, List<EntitySnapshot> snapshots) {}
+}
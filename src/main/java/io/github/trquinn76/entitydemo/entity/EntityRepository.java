@@ -9,4 +9,7 @@ public interface EntityRepository extends JpaRepository<Entity, Long> {
 
     @Query("SELECT e FROM Entity e WHERE e.latitudeDegrees BETWEEN :south AND :north AND e.longitudeDegrees BETWEEN :west AND :east")
     List<Entity> findByBounds(double north, double west, double south, double east);
+
+    @Query("SELECT MAX(e.id) FROM Entity e")
+    Long findMaxId();
 }
@@ -5,9 +5,15 @@ import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.lang.Nullable;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import reactor.core.publisher.Flux;
+
 /**
  * A Service of managing {@link Entity}'s.
  * 
@@ -16,15 +22,32 @@ import org.springframework.stereotype.Service;
  * memory, and will not have that much data in it. {@code @Async} has been used
  * primarily for the purpose of learning about Spring's asynchronous API, and
  * partly to understand how Vaadin interacts with it.
+ * 
+ * {@link Entity}'s are returned as immutable {@link EntitySnapshot}'s from the shared {@link EntityReadModel}, so that
+ * all sessions reference the same instances rather than each holding their own copies.
+ * 
+ * {@link Entity}'s are stored in the configured {@link EntityStore}, which is either the single repository, or
+ * partitioned by longitude across multiple shards.
  */
 @Service
 public class EntityService {
 
-    private final EntityRepository repository;
+    private static final Logger log = LoggerFactory.getLogger(EntityService.class);
 
-    public EntityService(EntityRepository repo) {
-        this.repository = Objects.requireNonNull(repo);
+    private final EntityStore store;
+    private final EntityReadModel readModel;
+    private final @Nullable EntityJournal journal;
 
+    // held while saving and publishing changes, so that the read model and journal see changes in the order the store
+    // does, and a slower save can not publish over a later one.
+    private final Object writeLock = new Object();
+
+    EntityService(EntityStore store, EntityReadModel readModel, ObjectProvider<EntityJournal> journal) {
+        this.store = Objects.requireNonNull(store);
+        this.readModel = Objects.requireNonNull(readModel);
+        this.journal = journal.getIfAvailable();
+
+        loadReadModel();
         populateDefaults();
     }
 
@@ -35,14 +58,22 @@ public class EntityService {
      * the repository as it is added.
      * 
      * @param entity the {@link Entity} to upsert. May not be null.
-     * @return the {@link Entity} after it has been saved to the repository. If the
-     *         {@link Entity} is new, then it's ID field will have been populated by
-     *         the repository.
+     * @return the {@link EntitySnapshot} published after the {@link Entity} has
+     *         been saved to the repository. If the {@link Entity} is new, then
+     *         it's ID field will have been populated by the repository.
      */
     @Async
-    public CompletableFuture<Entity> upsertEntity(Entity entity) {
+    public CompletableFuture<EntitySnapshot> upsertEntity(Entity entity) {
         Objects.requireNonNull(entity);
-        return CompletableFuture.completedFuture(repository.save(entity));
+        synchronized (writeLock) {
+            Entity saved = store.save(entity);
+            EntitySnapshot snapshot = readModel.publish(saved);
+            if (journal != null) {
+                journal.appendUpsert(snapshot);
+                snapshotIfDue();
+            }
+            return CompletableFuture.completedFuture(snapshot);
+        }
     }
 
     /**
@@ -54,30 +85,50 @@ public class EntityService {
     @Async
     public void removeEntity(Entity entity) {
         Objects.requireNonNull(entity);
-        repository.delete(entity);
+        synchronized (writeLock) {
+            store.delete(entity);
+            if (entity.getId() != null) {
+                if (readModel.remove(entity.getId()) && journal != null) {
+                    journal.appendRemove(entity.getId(), readModel.getVersion());
+                    snapshotIfDue();
+                }
+            }
+        }
     }
 
     /**
      * Gets the {@link Enitty} with the given Id.
      * 
      * @param id the Id of the {@link Entity} to get. May not be null.
-     * @return the {@link Entity} with the given Id, or null if no such
+     * @return the {@link EntitySnapshot} with the given Id, or null if no such
      *         {@link Entity} exists.
      */
     @Async
-    public CompletableFuture<Entity> getEntity(Long id) {
-        Objects.requireNonNull(id);
-        return CompletableFuture.completedFuture(repository.findById(id).orElse(null));
+    public CompletableFuture<EntitySnapshot> getEntity(Long id) {
+        return CompletableFuture.completedFuture(findSnapshot(id));
+    }
+
+    /**
+     * Gets the current {@link EntitySnapshot} with the given Id from the shared
+     * read model. This does not query the repository, and so is not asynchronous.
+     * 
+     * @param id the Id of the {@link Entity} to get. May not be null.
+     * @return the {@link EntitySnapshot} with the given Id, or null if no such
+     *         {@link Entity} exists.
+     */
+    public @Nullable EntitySnapshot findSnapshot(Long id) {
+        return readModel.get(id);
     }
 
     /**
      * Gets all the {@link Entity}'s in the repository.
      * 
-     * @return a list of all the {@link Entity}'s in the repository. May be empty.
+     * @return a list of all the {@link EntitySnapshot}'s, ordered by Id. May be
+     *         empty.
      */
     @Async
-    public CompletableFuture<List<Entity>> getAll() {
-        return CompletableFuture.completedFuture(repository.findAll());
+    public CompletableFuture<List<EntitySnapshot>> getAll() {
+        return CompletableFuture.completedFuture(readModel.getAll());
     }
 
     /**
@@ -92,22 +143,87 @@ public class EntityService {
      * @param southLat the southern bound as a latitude in degrees.
      * @param westLon  the western bound as a longitude in degrees.
      * @param eastLon  the eastern bound as a longitude in degrees.
-     * @return the list of {@link Entity}'s which fall within the bounds. May be
-     *         empty.
+     * @return the list of {@link EntitySnapshot}'s which fall within the bounds.
+     *         May be empty.
      */
     @Async
-    public CompletableFuture<List<Entity>> getEntities(double northLat, double southLat, double westLon,
+    public CompletableFuture<List<EntitySnapshot>> getEntities(double northLat, double southLat, double westLon,
             double eastLon) {
-        List<Entity> retList = new ArrayList<>();
-        if (eastLon < westLon) {
-            // then crossing the antimeridian, query with an antimeridian cut.
-            retList.addAll(repository.findByBounds(northLat, westLon, southLat, 180.0));
-            retList.addAll(repository.findByBounds(northLat, -180.0, southLat, eastLon));
+        List<Entity> found = store.findByBounds(new Viewport(northLat, southLat, westLon, eastLon));
+
+        // return the shared snapshots, so the Entity's loaded by the query are not retained.
+        List<EntitySnapshot> retList = new ArrayList<>(found.size());
+        for (Entity entity : found) {
+            retList.add(readModel.intern(entity));
+        }
+        return CompletableFuture.completedFuture(retList);
+    }
+
+    /**
+     * Streams the {@link Entity}'s which fall inside the specified latitude and
+     * longitude bounds, as they are read from the repository.
+     * 
+     * How the {@link Entity}'s are emitted depends on the {@link EntityStore}.
+     * When a {@link ReactiveEntityRepository} is configured they are emitted as
+     * the rows arrive, and when sharded as each shard's query completes. Bounds
+     * which cross the antimeridian are handled as by
+     * {@link #getEntities(double, double, double, double)}.
+     * 
+     * @param northLat the northern bound as a latitude in degrees.
+     * @param southLat the southern bound as a latitude in degrees.
+     * @param westLon  the western bound as a longitude in degrees.
+     * @param eastLon  the eastern bound as a longitude in degrees.
+     * @return a {@link Flux} of the {@link EntitySnapshot}'s which fall within the
+     *         bounds. Nothing is queried until it is subscribed to.
+     */
+    public Flux<EntitySnapshot> streamEntities(double northLat, double southLat, double westLon, double eastLon) {
+        return store.streamByBounds(new Viewport(northLat, southLat, westLon, eastLon)).map(readModel::intern);
+    }
+
+    /**
+     * Streams the {@link Entity}'s which fall inside the given {@link Viewport}.
+     * 
+     * @param viewport the bounds to query. May not be null.
+     * @return a {@link Flux} of the {@link EntitySnapshot}'s which fall within the
+     *         bounds.
+     * @see #streamEntities(double, double, double, double)
+     */
+    public Flux<EntitySnapshot> streamEntities(Viewport viewport) {
+        return streamEntities(viewport.northLat(), viewport.southLat(), viewport.westLon(), viewport.eastLon());
+    }
+
+    /**
+     * Loads the read model, from the {@link EntityJournal} if one is configured and
+     * can be recovered, otherwise from the whole repository.
+     */
+    private void loadReadModel() {
+        if (journal == null) {
+            readModel.load(store.findAll());
+            return;
+        }
+
+        EntityJournal.Recovered recovered = journal.recover();
+        // the count and largest Id are cheap checks that no Entity has been added or removed without being journaled,
+        // eg: if the last records were lost in a crash. They do not catch updates which were not journaled.
+        if (recovered != null && recovered.snapshots().size() == store.count() && recovered.maxId() == store.maxId()) {
+            readModel.restore(recovered.version(), recovered.snapshots());
+            log.info("Recovered {} entities from the entity journal at version {}{}", recovered.snapshots().size(),
+                    recovered.version(), recovered.clean() ? "" : ", after a crash");
         } else {
-            retList.addAll(repository.findByBounds(northLat, westLon, southLat, eastLon));
+            readModel.load(store.findAll());
         }
+        journal.start(readModel.getVersion(), readModel.getAll());
+    }
 
-        return CompletableFuture.completedFuture(retList);
+    // must be called while holding the write lock. Only the rotation of the journal happens under the lock, the
+    // snapshot is written in the background from the immutable list of the snapshots at the rotated version.
+    private void snapshotIfDue() {
+        if (journal.isSnapshotDue()) {
+            long version = readModel.getVersion();
+            List<EntitySnapshot> snapshots = readModel.getAll();
+            journal.rotate(version);
+            CompletableFuture.runAsync(() -> journal.snapshot(version, snapshots));
+        }
     }
 
     private void populateDefaults() {
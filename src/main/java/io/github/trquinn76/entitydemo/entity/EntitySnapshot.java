@@ -0,0 +1,70 @@
+package io.github.trquinn76.entitydemo.entity;
+
+import java.util.Objects;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * An immutable, versioned copy of an {@link Entity}.
+ *
+ * Snapshots published by the {@link EntityReadModel} are shared by every session which displays them, so they are
+ * never modified. To edit an {@link Entity} use {@link #toEntity()} to get a mutable copy, and upsert that copy via the
+ * {@link EntityService}, which will publish a new snapshot.
+ *
+ * @param id               the Id of the {@link Entity}, or null if it has not yet been saved to the repository.
+ * @param name             the name of the {@link Entity}.
+ * @param latitudeDegrees  the latitude of the {@link Entity} in degrees.
+ * @param longitudeDegrees the longitude of the {@link Entity} in degrees.
+ * @param description      the description of the {@link Entity}.
+ * @param version          the {@link EntityReadModel} version at which this snapshot was published, or zero if it was
+ *                         never published.
+ */
+public record EntitySnapshot(@Nullable Long id, @Nullable String name, @Nullable Double latitudeDegrees,
+        @Nullable Double longitudeDegrees, @Nullable String description, long version) {
+
+    /**
+     * Creates an unpublished snapshot for a new {@link Entity}, which has not yet been saved to the repository.
+     *
+     * @param name             the name of the new {@link Entity}. May be null.
+     * @param latitudeDegrees  the latitude of the new {@link Entity} in degrees. May be null.
+     * @param longitudeDegrees the longitude of the new {@link Entity} in degrees. May be null.
+     * @return the draft snapshot.
+     */
+    public static EntitySnapshot draft(@Nullable String name, @Nullable Double latitudeDegrees,
+            @Nullable Double longitudeDegrees) {
+        return new EntitySnapshot(null, name, latitudeDegrees, longitudeDegrees, null, 0L);
+    }
+
+    static EntitySnapshot of(Entity entity, long version) {
+        Objects.requireNonNull(entity);
+        return new EntitySnapshot(entity.getId(), entity.getName(), entity.getLatitudeDegrees(),
+                entity.getLongitudeDegrees(), entity.getDescription(), version);
+    }
+
+    /**
+     * Creates a new mutable {@link Entity} holding the values of this snapshot. Changes to the returned
+     * {@link Entity} do not affect this snapshot.
+     *
+     * @return a new {@link Entity}.
+     */
+    public Entity toEntity() {
+        Entity entity = new Entity();
+        entity.setId(id);
+        entity.setName(name);
+        entity.setLatitudeDegrees(latitudeDegrees);
+        entity.setLongitudeDegrees(longitudeDegrees);
+        entity.setDescription(description);
+        return entity;
+    }
+
+    /**
+     * @param entity the {@link Entity} to compare to. May not be null.
+     * @return true if this snapshot holds the same values as the given {@link Entity}, ignoring the version.
+     */
+    boolean matches(Entity entity) {
+        return Objects.equals(id, entity.getId()) && Objects.equals(name, entity.getName())
+                && Objects.equals(latitudeDegrees, entity.getLatitudeDegrees())
+                && Objects.equals(longitudeDegrees, entity.getLongitudeDegrees())
+                && Objects.equals(description, entity.getDescription());
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.trquinn76.entitydemo.entity;
+
+import java.util.List;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * The storage of {@link Entity}'s used by the {@link EntityService}.
+ *
+ * By default this is the {@link JpaEntityStore}, which uses the single {@code entity} table. When
+ * {@code entitydemo.sharding.enabled} is true it is the {@link ShardedEntityStore}, which partitions the
+ * {@link Entity}'s across multiple databases.
+ */
+interface EntityStore {
+
+    /**
+     * @param entity the {@link Entity} to insert or update. If it has no Id, one is assigned.
+     * @return the saved {@link Entity}, with its Id set.
+     */
+    Entity save(Entity entity);
+
+    /**
+     * @param entity the {@link Entity} to delete.
+     */
+    void delete(Entity entity);
+
+    /**
+     * @return all the stored {@link Entity}'s.
+     */
+    List<Entity> findAll();
+
+    /**
+     * @return the number of stored {@link Entity}'s.
+     */
+    long count();
+
+    /**
+     * @return the largest Id of the stored {@link Entity}'s, or 0 if there are none.
+     */
+    long maxId();
+
+    /**
+     * @param viewport the bounds to query. Bounds which cross the antimeridian are queried with an antimeridian cut.
+     * @return the {@link Entity}'s which fall within the bounds.
+     */
+    List<Entity> findByBounds(Viewport viewport);
+
+    /**
+     * @param viewport the bounds to query. Bounds which cross the antimeridian are queried with an antimeridian cut.
+     * @return a {@link Flux} of the {@link Entity}'s which fall within the bounds. Nothing is queried until it is
+     *         subscribed to.
+     */
+    Flux<Entity> streamByBounds(Viewport viewport);
+}
@@ -0,0 +1,91 @@
+package io.github.trquinn76.entitydemo.entity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * The default {@link EntityStore}, which stores {@link Entity}'s in the single {@code entity} table via the
+ * {@link EntityRepository}.
+ *
+ * When a {@link ReactiveEntityRepository} is configured, streamed queries do not block a thread, and {@link Entity}'s
+ * are emitted as the rows arrive. Otherwise the blocking query is run on the bounded elastic scheduler, and its results
+ * emitted once it completes.
+ */
+@Component
+@ConditionalOnProperty(name = "entitydemo.sharding.enabled", havingValue = "false", matchIfMissing = true)
+class JpaEntityStore implements EntityStore {
+
+    private final EntityRepository repository;
+    private final @Nullable ReactiveEntityRepository reactiveRepository;
+
+    JpaEntityStore(EntityRepository repository, ObjectProvider<ReactiveEntityRepository> reactiveRepository) {
+        this.repository = Objects.requireNonNull(repository);
+        this.reactiveRepository = reactiveRepository.getIfAvailable();
+    }
+
+    @Override
+    public Entity save(Entity entity) {
+        return repository.save(entity);
+    }
+
+    @Override
+    public void delete(Entity entity) {
+        repository.delete(entity);
+    }
+
+    @Override
+    public List<Entity> findAll() {
+        return repository.findAll();
+    }
+
+    @Override
+    public long count() {
+        return repository.count();
+    }
+
+    @Override
+    public long maxId() {
+        Long maxId = repository.findMaxId();
+        return maxId == null ? 0L : maxId;
+    }
+
+    @Override
+    public List<Entity> findByBounds(Viewport viewport) {
+        List<Entity> found = new ArrayList<>();
+        if (viewport.crossesAntimeridian()) {
+            // then crossing the antimeridian, query with an antimeridian cut.
+            found.addAll(repository.findByBounds(viewport.northLat(), viewport.westLon(), viewport.southLat(), 180.0));
+            found.addAll(repository.findByBounds(viewport.northLat(), -180.0, viewport.southLat(), viewport.eastLon()));
+        } else {
+            found.addAll(repository.findByBounds(viewport.northLat(), viewport.westLon(), viewport.southLat(),
+                    viewport.eastLon()));
+        }
+        return found;
+    }
+
+    @Override
+    public Flux<Entity> streamByBounds(Viewport viewport) {
+        if (reactiveRepository == null) {
+            return Flux.defer(() -> Flux.fromIterable(findByBounds(viewport)))
+                    .subscribeOn(Schedulers.boundedElastic());
+        } else if (viewport.crossesAntimeridian()) {
+            // then crossing the antimeridian, query with an antimeridian cut.
+            return Flux.concat(
+                    reactiveRepository.findByBounds(viewport.northLat(), viewport.westLon(), viewport.southLat(),
+                            180.0),
+                    reactiveRepository.findByBounds(viewport.northLat(), -180.0, viewport.southLat(),
+                            viewport.eastLon()));
+        }
+        return reactiveRepository.findByBounds(viewport.northLat(), viewport.westLon(), viewport.southLat(),
+                viewport.eastLon());
+    }
+}
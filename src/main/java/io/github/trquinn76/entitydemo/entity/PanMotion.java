@@ -0,0 +1,32 @@
+package io.github.trquinn76.entitydemo.entity;
+
+/**
+ * The movement of the centre of the map over a single pan, as reported by the client.
+ *
+ * @param deltaLat       the distance moved north, in degrees of latitude. Negative if moved south.
+ * @param deltaLon       the distance moved east, in degrees of longitude. Negative if moved west.
+ * @param durationMillis how long the pan took, in milliseconds.
+ */
+public record PanMotion(double deltaLat, double deltaLon, long durationMillis) {
+
+    /**
+     * @return true if the map did not move, eg: the map was only zoomed.
+     */
+    public boolean isStopped() {
+        return deltaLat == 0.0 && deltaLon == 0.0;
+    }
+
+    /**
+     * @return the distance moved, in degrees.
+     */
+    public double distance() {
+        return Math.hypot(deltaLat, deltaLon);
+    }
+
+    /**
+     * @return the speed of the pan in degrees per second, or zero if the duration is unknown.
+     */
+    public double velocity() {
+        return durationMillis > 0L ? distance() * 1000.0 / durationMillis : 0.0;
+    }
+}
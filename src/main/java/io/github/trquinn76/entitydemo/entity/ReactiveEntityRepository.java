@@ -0,0 +1,87 @@
+package io.github.trquinn76.entitydemo.entity;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Readable;
+import reactor.core.publisher.Flux;
+
+/**
+ * A non-blocking, R2DBC, path to the {@link Entity} table, used to stream {@link Entity}'s as the rows arrive rather
+ * than waiting for the whole result to be loaded.
+ *
+ * This is only created when {@code entitydemo.r2dbc.url} is set and not blank, and that must point at the same database
+ * as the JPA {@code DataSource}. The connection pool is created here, rather than by Spring Boot's R2DBC
+ * auto-configuration, because Spring Boot does not configure a JDBC {@code DataSource} (and so JPA) when an R2DBC
+ * {@code ConnectionFactory} bean is present.
+ *
+ * Writes still go through the {@link EntityRepository}.
+ */
+@Component
+// a blank url is treated as not set, so the reactive path can be turned off by overriding it with nothing.
+@ConditionalOnExpression("!'${entitydemo.r2dbc.url:}'.isBlank()")
+public class ReactiveEntityRepository implements DisposableBean {
+
+    private static final String FIND_BY_BOUNDS = "SELECT task_id, name, latitude, longitude, description FROM entity "
+            + "WHERE latitude BETWEEN :south AND :north AND longitude BETWEEN :west AND :east";
+
+    private final ConnectionPool connectionPool;
+    private final DatabaseClient client;
+
+    ReactiveEntityRepository(@Value("${entitydemo.r2dbc.url}") String url,
+            @Value("${entitydemo.r2dbc.username:}") String username,
+            @Value("${entitydemo.r2dbc.password:}") String password,
+            @Value("${entitydemo.r2dbc.pool.max-size:10}") int maxPoolSize) {
+        ConnectionFactoryOptions.Builder options = ConnectionFactoryOptions.parse(url).mutate();
+        if (!username.isEmpty()) {
+            options.option(ConnectionFactoryOptions.USER, username);
+        }
+        if (!password.isEmpty()) {
+            options.option(ConnectionFactoryOptions.PASSWORD, password);
+        }
+
+        this.connectionPool = new ConnectionPool(
+                ConnectionPoolConfiguration.builder(ConnectionFactories.get(options.build())).maxSize(maxPoolSize)
+                        .maxIdleTime(Duration.ofMinutes(30)).build());
+        this.client = DatabaseClient.create(connectionPool);
+    }
+
+    /**
+     * Streams the {@link Entity}'s which fall inside the specified latitude and longitude bounds. The bounds must not
+     * cross the antimeridian.
+     *
+     * @param north the northern bound as a latitude in degrees.
+     * @param west  the western bound as a longitude in degrees.
+     * @param south the southern bound as a latitude in degrees.
+     * @param east  the eastern bound as a longitude in degrees.
+     * @return a {@link Flux} of the {@link Entity}'s, emitted as the rows arrive from the database.
+     */
+    public Flux<Entity> findByBounds(double north, double west, double south, double east) {
+        return client.sql(FIND_BY_BOUNDS).bind("north", north).bind("west", west).bind("south", south)
+                .bind("east", east).map(ReactiveEntityRepository::toEntity).all();
+    }
+
+    @Override
+    public void destroy() {
+        connectionPool.dispose();
+    }
+
+    private static Entity toEntity(Readable row) {
+        Entity entity = new Entity();
+        entity.setId(row.get("task_id", Long.class));
+        entity.setName(row.get("name", String.class));
+        entity.setLatitudeDegrees(row.get("latitude", Double.class));
+        entity.setLongitudeDegrees(row.get("longitude", Double.class));
+        entity.setDescription(row.get("description", String.class));
+        return entity;
+    }
+}
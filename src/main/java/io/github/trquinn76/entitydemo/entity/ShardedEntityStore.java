@@ -0,0 +1,248 @@
+package io.github.trquinn76.entitydemo.entity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * An {@link EntityStore} which partitions {@link Entity}'s by longitude across multiple databases, or shards.
+ *
+ * The world is cut into equal bands of longitude, one per shard, from west to east. Each {@link Entity} is stored in
+ * the shard owning its longitude, and is moved between shards if its longitude changes. Bounds queries only go to the
+ * shards whose bands intersect the bounds, including both halves of bounds which cross the antimeridian, and the
+ * shards are queried in parallel before the results are merged.
+ *
+ * The shards are configured with the comma separated JDBC urls in {@code entitydemo.sharding.urls}, and are only used
+ * when {@code entitydemo.sharding.enabled} is true. Each shard has its own {@code entity} table, which is created if it
+ * does not exist. Ids are assigned from a counter started above the largest existing Id, so only a single node may
+ * write to the shards.
+ */
+@Component
+@ConditionalOnProperty(name = "entitydemo.sharding.enabled", havingValue = "true")
+class ShardedEntityStore implements EntityStore, DisposableBean {
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS entity (task_id BIGINT PRIMARY KEY, "
+            + "name VARCHAR(255) NOT NULL, latitude DOUBLE PRECISION NOT NULL, longitude DOUBLE PRECISION NOT NULL, "
+            + "description VARCHAR(255))";
+    private static final String CREATE_INDEX = "CREATE INDEX IF NOT EXISTS entity_location "
+            + "ON entity (longitude, latitude)";
+    private static final String SELECT = "SELECT task_id, name, latitude, longitude, description FROM entity";
+    private static final String FIND_BY_BOUNDS = SELECT
+            + " WHERE latitude BETWEEN ? AND ? AND longitude BETWEEN ? AND ?";
+    private static final String UPDATE = "UPDATE entity SET name = ?, latitude = ?, longitude = ?, description = ? "
+            + "WHERE task_id = ?";
+    private static final String INSERT = "INSERT INTO entity (task_id, name, latitude, longitude, description) "
+            + "VALUES (?, ?, ?, ?, ?)";
+    private static final String DELETE = "DELETE FROM entity WHERE task_id = ?";
+
+    private static final RowMapper<Entity> ROW_MAPPER = (row, rowNum) -> {
+        Entity entity = new Entity();
+        entity.setId(row.getLong("task_id"));
+        entity.setName(row.getString("name"));
+        entity.setLatitudeDegrees(row.getDouble("latitude"));
+        entity.setLongitudeDegrees(row.getDouble("longitude"));
+        entity.setDescription(row.getString("description"));
+        return entity;
+    };
+
+    private final List<Shard> shards;
+    private final AtomicLong nextId;
+    // the queries block on JDBC, so each runs on its own virtual thread.
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Scheduler scheduler = Schedulers.fromExecutorService(executor);
+
+    ShardedEntityStore(@Value("${entitydemo.sharding.urls}") String[] urls,
+            @Value("${entitydemo.sharding.username:}") String username,
+            @Value("${entitydemo.sharding.password:}") String password) {
+        if (urls.length == 0) {
+            throw new IllegalArgumentException("entitydemo.sharding.urls must list at least one shard");
+        }
+
+        List<Shard> created = new ArrayList<>(urls.length);
+        for (int i = 0; i < urls.length; i++) {
+            DataSource dataSource = DataSourceBuilder.create().url(urls[i].trim()).username(username)
+                    .password(password).build();
+            JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+            jdbc.execute(CREATE_TABLE);
+            jdbc.execute(CREATE_INDEX);
+            created.add(new Shard(i, dataSource, jdbc));
+        }
+        this.shards = List.copyOf(created);
+
+        this.nextId = new AtomicLong(maxId() + 1);
+    }
+
+    /**
+     * @return the number of shards.
+     */
+    int getShardCount() {
+        return shards.size();
+    }
+
+    @Override
+    public Entity save(Entity entity) {
+        Objects.requireNonNull(entity);
+        boolean isNew = entity.getId() == null;
+        if (isNew) {
+            entity.setId(nextId.getAndIncrement());
+        }
+
+        Shard owner = shardFor(entity.getLongitudeDegrees());
+        if (isNew || owner.jdbc().update(UPDATE, entity.getName(), entity.getLatitudeDegrees(),
+                entity.getLongitudeDegrees(), entity.getDescription(), entity.getId()) == 0) {
+            owner.jdbc().update(INSERT, entity.getId(), entity.getName(), entity.getLatitudeDegrees(),
+                    entity.getLongitudeDegrees(), entity.getDescription());
+            if (!isNew) {
+                // the Entity may have moved from another shard. The shards are not updated in a single transaction, so
+                // it is only removed from there once it is in its new shard. If that fails, the old copy is left in
+                // place, rather than the Entity being lost.
+                deleteFromAll(entity.getId(), owner);
+            }
+        }
+        return entity;
+    }
+
+    @Override
+    public void delete(Entity entity) {
+        Objects.requireNonNull(entity);
+        if (entity.getId() == null) {
+            return;
+        }
+        // the location may have been edited since it was saved, so look in every shard if it is not where expected.
+        if (entity.getLongitudeDegrees() == null
+                || shardFor(entity.getLongitudeDegrees()).jdbc().update(DELETE, entity.getId()) == 0) {
+            deleteFromAll(entity.getId(), null);
+        }
+    }
+
+    @Override
+    public List<Entity> findAll() {
+        return scatterGather(shards, shard -> shard.jdbc().query(SELECT, ROW_MAPPER));
+    }
+
+    @Override
+    public long count() {
+        List<Long> counts = scatterGather(shards,
+                shard -> List.of(shard.jdbc().queryForObject("SELECT COUNT(*) FROM entity", Long.class)));
+        return counts.stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Override
+    public long maxId() {
+        List<Long> maxIds = scatterGather(shards, shard -> {
+            Long shardMax = shard.jdbc().queryForObject("SELECT MAX(task_id) FROM entity", Long.class);
+            return shardMax == null ? List.of() : List.of(shardMax);
+        });
+        return maxIds.stream().mapToLong(Long::longValue).max().orElse(0L);
+    }
+
+    @Override
+    public List<Entity> findByBounds(Viewport viewport) {
+        List<ShardQuery> queries = plan(viewport);
+        return scatterGather(queries, ShardQuery::run);
+    }
+
+    @Override
+    public Flux<Entity> streamByBounds(Viewport viewport) {
+        // each shard's results are emitted as soon as that shard completes, rather than waiting for them all.
+        return Flux.defer(() -> Flux.merge(plan(viewport).stream()
+                .map(query -> Flux.defer(() -> Flux.fromIterable(query.run()))
+                        .subscribeOn(scheduler))
+                .toList()));
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+        for (Shard shard : shards) {
+            if (shard.dataSource() instanceof HikariDataSource hikari) {
+                hikari.close();
+            }
+        }
+    }
+
+    /**
+     * Plans the queries for the given bounds, one for each shard whose band intersects them. Bounds which cross the
+     * antimeridian are cut into their western and eastern halves, and each half is a query of the shards it intersects.
+     */
+    List<ShardQuery> plan(Viewport viewport) {
+        List<ShardQuery> queries = new ArrayList<>();
+        if (viewport.crossesAntimeridian()) {
+            plan(viewport, viewport.westLon(), 180.0, queries);
+            plan(viewport, -180.0, viewport.eastLon(), queries);
+        } else {
+            plan(viewport, viewport.westLon(), viewport.eastLon(), queries);
+        }
+        return queries;
+    }
+
+    private void plan(Viewport viewport, double west, double east, List<ShardQuery> queries) {
+        // the shards are found by the owner of each end, rather than by separately computed band edges, so that a
+        // longitude on the edge of a band is always queried in the shard it was saved to. The half is not clipped to
+        // each shard's band for the same reason, as each shard only holds the rows of its own band anyway.
+        for (int i = shardFor(west).index(); i <= shardFor(east).index(); i++) {
+            queries.add(new ShardQuery(shards.get(i), viewport.northLat(), viewport.southLat(), west, east));
+        }
+    }
+
+    /**
+     * @return the shard which owns the given longitude. The bands of the shards are defined by this alone.
+     */
+    Shard shardFor(double longitudeDegrees) {
+        double normalised = Viewport.normaliseLongitude(longitudeDegrees);
+        int index = (int) ((normalised + 180.0) / 360.0 * shards.size());
+        return shards.get(Math.min(Math.max(index, 0), shards.size() - 1));
+    }
+
+    private void deleteFromAll(long id, @Nullable Shard except) {
+        scatterGather(shards.stream().filter(shard -> shard != except).toList(),
+                shard -> List.of(shard.jdbc().update(DELETE, id)));
+    }
+
+    // runs the query against each of the sources in parallel, and merges the results in the order of the sources.
+    private <S, R> List<R> scatterGather(List<S> sources, Function<S, List<R>> query) {
+        List<CompletableFuture<List<R>>> futures = new ArrayList<>(sources.size());
+        for (S source : sources) {
+            futures.add(CompletableFuture.supplyAsync(() -> query.apply(source), executor));
+        }
+        List<R> merged = new ArrayList<>();
+        for (CompletableFuture<List<R>> future : futures) {
+            merged.addAll(future.join());
+        }
+        return merged;
+    }
+
+    record Shard(int index, DataSource dataSource, JdbcTemplate jdbc) {}
+
+    /**
+     * A query of a single shard, with the bounds of the whole query, or of one half of it.
+     */
+    record ShardQuery(Shard shard, double northLat, double southLat, double westLon, double eastLon) {
+
+        List<Entity> run() {
+            return shard.jdbc().query(FIND_BY_BOUNDS, ROW_MAPPER, southLat, northLat, westLon, eastLon);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package io.github.trquinn76.entitydemo.entity;
+
+/**
+ * The latitude and longitude bounds of a view of the map.
+ *
+ * Longitudes are normalised to the range -180 to 180 degrees. Bounds where the eastern longitude is less than the
+ * western longitude cross the antimeridian.
+ *
+ * @param northLat the northern bound as a latitude in degrees.
+ * @param southLat the southern bound as a latitude in degrees.
+ * @param westLon  the western bound as a longitude in degrees.
+ * @param eastLon  the eastern bound as a longitude in degrees.
+ */
+public record Viewport(double northLat, double southLat, double westLon, double eastLon) {
+
+    /**
+     * @return true if these bounds cross the antimeridian.
+     */
+    public boolean crossesAntimeridian() {
+        return eastLon < westLon;
+    }
+
+    /**
+     * @return the width of these bounds in degrees of longitude.
+     */
+    public double longitudeSpan() {
+        return crossesAntimeridian() ? eastLon - westLon + 360.0 : eastLon - westLon;
+    }
+
+    /**
+     * @return the height of these bounds in degrees of latitude.
+     */
+    public double latitudeSpan() {
+        return northLat - southLat;
+    }
+
+    /**
+     * @param latitudeDegrees  the latitude to test.
+     * @param longitudeDegrees the longitude to test.
+     * @return true if the given location falls within these bounds.
+     */
+    public boolean contains(double latitudeDegrees, double longitudeDegrees) {
+        return latitudeDegrees >= southLat && latitudeDegrees <= northLat
+                && eastOf(westLon, longitudeDegrees) <= longitudeSpan();
+    }
+
+    /**
+     * @param other the bounds to test.
+     * @return true if the given bounds fall entirely within these bounds.
+     */
+    public boolean contains(Viewport other) {
+        if (other.southLat < southLat || other.northLat > northLat) {
+            return false;
+        }
+        if (longitudeSpan() >= 360.0) {
+            return true;
+        }
+        return eastOf(westLon, other.westLon) + other.longitudeSpan() <= longitudeSpan();
+    }
+
+    /**
+     * @param deltaLat the distance to move north, in degrees of latitude. Negative to move south.
+     * @param deltaLon the distance to move east, in degrees of longitude. Negative to move west.
+     * @return these bounds moved by the given distances. The bounds stop at the poles, keeping their height, rather
+     *         than moving past them.
+     */
+    public Viewport translate(double deltaLat, double deltaLon) {
+        // clamping the bounds separately could move the southern bound north of the northern bound.
+        double clampedDeltaLat = Math.max(-90.0 - southLat, Math.min(90.0 - northLat, deltaLat));
+        double north = northLat + clampedDeltaLat;
+        double south = southLat + clampedDeltaLat;
+        if (longitudeSpan() >= 360.0) {
+            return new Viewport(north, south, westLon, eastLon);
+        }
+        return new Viewport(north, south, normaliseLongitude(westLon + deltaLon),
+                normaliseLongitude(eastLon + deltaLon));
+    }
+
+    /**
+     * @param factor the factor to scale the width and height by, eg: 2.0 for zooming out one level of the map.
+     * @return these bounds scaled about their centre. Latitudes are clamped to the poles, and bounds wider than the
+     *         world cover all longitudes.
+     */
+    public Viewport scale(double factor) {
+        double centreLat = (northLat + southLat) / 2.0;
+        double halfLat = latitudeSpan() * factor / 2.0;
+        double north = Math.min(90.0, centreLat + halfLat);
+        double south = Math.max(-90.0, centreLat - halfLat);
+
+        double lonSpan = longitudeSpan() * factor;
+        if (lonSpan >= 360.0) {
+            return new Viewport(north, south, -180.0, 180.0);
+        }
+        double centreLon = westLon + longitudeSpan() / 2.0;
+        return new Viewport(north, south, normaliseLongitude(centreLon - lonSpan / 2.0),
+                normaliseLongitude(centreLon + lonSpan / 2.0));
+    }
+
+    /**
+     * @param longitudeDegrees a longitude in degrees.
+     * @return the equivalent longitude in the range -180 to 180 degrees.
+     */
+    public static double normaliseLongitude(double longitudeDegrees) {
+        while (longitudeDegrees < -180.0) longitudeDegrees += 360.0;
+        while (longitudeDegrees > 180.0) longitudeDegrees -= 360.0;
+        return longitudeDegrees;
+    }
+
+    // the distance east from one longitude to another, in the range 0 to 360 degrees.
+    private static double eastOf(double fromLon, double toLon) {
+        double delta = (toLon - fromLon) % 360.0;
+        return delta < 0.0 ? delta + 360.0 : delta;
+    }
+}
@@ -0,0 +1,191 @@
+package io.github.trquinn76.entitydemo.entity;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.springframework.lang.Nullable;
+
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+
+/**
+ * Prefetches the {@link EntitySnapshot}'s for the viewports a session is likely to move to next, into a small bounded
+ * buffer, so they can be served without waiting for the repository.
+ *
+ * After each move the session reports its new {@link Viewport} and the {@link PanMotion} which got it there. The
+ * prefetcher then queries the viewport the pan is heading towards, based on its direction and velocity, and the
+ * current viewport zoomed out one level. A move which does not pan the map, eg: a zoom, starts no prefetches.
+ * Outstanding prefetches are cancelled by the next move, or once no further move has been reported within the idle
+ * timeout, as the user has then stopped panning and is unlikely to need them soon.
+ *
+ * Buffered results are discarded once the {@link EntityReadModel} changes, so that edits are never hidden by stale
+ * results. An instance is created per session by the {@link ViewportPrefetcherFactory}, and is thread safe.
+ */
+public class ViewportPrefetcher {
+
+    // widens the predicted viewport, so the next viewport does not have to match the prediction exactly.
+    private static final double PREDICTION_MARGIN = 1.5;
+    private static final double ZOOM_OUT_FACTOR = 2.0;
+
+    private final ViewportPrefetcherFactory factory;
+
+    // least recently used first.
+    private final Map<Viewport, Prefetched> buffer = new LinkedHashMap<>(16, 0.75f, true);
+    private Disposable.Composite inFlight = Disposables.composite();
+
+    ViewportPrefetcher(ViewportPrefetcherFactory factory) {
+        this.factory = Objects.requireNonNull(factory);
+    }
+
+    /**
+     * Gets the prefetched {@link EntitySnapshot}'s within the given viewport, if a buffered result covers it.
+     *
+     * @param viewport the viewport to get the {@link EntitySnapshot}'s for. May not be null.
+     * @return the {@link EntitySnapshot}'s within the viewport, or null if it is not covered by the buffer and so must
+     *         be queried from the {@link EntityService}.
+     */
+    public @Nullable List<EntitySnapshot> take(Viewport viewport) {
+        Objects.requireNonNull(viewport);
+        if (!factory.isEnabled()) {
+            return null;
+        }
+
+        List<EntitySnapshot> result = null;
+        synchronized (this) {
+            long version = factory.getReadModel().getVersion();
+            Prefetched hit = null;
+            for (Iterator<Prefetched> it = buffer.values().iterator(); it.hasNext();) {
+                Prefetched prefetched = it.next();
+                if (prefetched.version() != version) {
+                    it.remove();
+                } else if (hit == null && prefetched.viewport().contains(viewport)) {
+                    hit = prefetched;
+                }
+            }
+            if (hit != null) {
+                // marks the hit as the most recently used.
+                buffer.get(hit.viewport());
+                result = new ArrayList<>();
+                for (EntitySnapshot snapshot : hit.snapshots()) {
+                    if (viewport.contains(snapshot.latitudeDegrees(), snapshot.longitudeDegrees())) {
+                        result.add(snapshot);
+                    }
+                }
+            }
+        }
+        factory.recordLookup(result != null);
+        return result;
+    }
+
+    /**
+     * Cancels any outstanding prefetches, and starts prefetching for the viewports likely to follow the given one.
+     *
+     * @param viewport the viewport the map has moved to. May not be null.
+     * @param motion   the pan which moved the map to the viewport. May not be null.
+     * @param admit    asked before each prefetch query, which is skipped if it returns false, eg: while the node is
+     *                 overloaded. May not be null.
+     */
+    public void prefetch(Viewport viewport, PanMotion motion, BooleanSupplier admit) {
+        Objects.requireNonNull(viewport);
+        Objects.requireNonNull(motion);
+        Objects.requireNonNull(admit);
+        cancel();
+        if (!factory.isEnabled() || motion.isStopped()) {
+            return;
+        }
+
+        // expect the pan to continue in the same direction, at least as far again, and further if it was fast.
+        double maxDistance = Math.max(viewport.latitudeSpan(), viewport.longitudeSpan());
+        double lookaheadSeconds = factory.getLookahead().toMillis() / 1000.0;
+        double distance = Math.min(maxDistance, Math.max(motion.distance(), motion.velocity() * lookaheadSeconds));
+        Viewport predicted = viewport.translate(motion.deltaLat() / motion.distance() * distance,
+                motion.deltaLon() / motion.distance() * distance).scale(PREDICTION_MARGIN);
+
+        // the predicted viewport is the more likely to be used, so it is asked for first.
+        if (admit.getAsBoolean()) {
+            prefetchViewport(predicted);
+        }
+        if (admit.getAsBoolean()) {
+            prefetchViewport(viewport.scale(ZOOM_OUT_FACTOR));
+        }
+
+        Disposable.Composite started;
+        synchronized (this) {
+            started = inFlight;
+        }
+        if (started.size() > 0) {
+            // added to the prefetches it cancels, so that the next move cancels it along with them.
+            started.add(factory.getIdleScheduler().schedule(() -> cancelIdle(started),
+                    factory.getIdleTimeout().toNanos(), TimeUnit.NANOSECONDS));
+        }
+    }
+
+    /**
+     * Cancels any outstanding prefetches. Results already buffered are kept.
+     */
+    public void cancel() {
+        Disposable.Composite cancelled;
+        synchronized (this) {
+            cancelled = inFlight;
+            inFlight = Disposables.composite();
+        }
+        cancelled.dispose();
+    }
+
+    // cancels the given prefetches, unless they have already been replaced by those of a later move.
+    private void cancelIdle(Disposable.Composite prefetches) {
+        synchronized (this) {
+            if (inFlight != prefetches) {
+                return;
+            }
+            inFlight = Disposables.composite();
+        }
+        prefetches.dispose();
+    }
+
+    /**
+     * Cancels any outstanding prefetches, and discards the buffered results.
+     */
+    public void close() {
+        cancel();
+        synchronized (this) {
+            buffer.clear();
+        }
+    }
+
+    private void prefetchViewport(Viewport viewport) {
+        long version = factory.getReadModel().getVersion();
+        int maxEntities = factory.getMaxEntities();
+
+        factory.recordPrefetch();
+        // one more than the maximum is requested, to tell whether the result was too large to buffer.
+        Disposable subscription = factory.getEntityService().streamEntities(viewport).take(maxEntities + 1L)
+                .collectList().doOnCancel(factory::recordCancelled).subscribe(snapshots -> {
+                    if (snapshots.size() <= maxEntities) {
+                        store(new Prefetched(viewport, version, List.copyOf(snapshots)));
+                    }
+                }, error -> {
+                    // prefetching is only an optimisation, the viewport will be queried again if it is needed.
+                });
+        synchronized (this) {
+            inFlight.add(subscription);
+        }
+    }
+
+    private synchronized void store(Prefetched prefetched) {
+        buffer.put(prefetched.viewport(), prefetched);
+        if (buffer.size() > factory.getBufferSize()) {
+            Iterator<Viewport> eldest = buffer.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private record Prefetched(Viewport viewport, long version, List<EntitySnapshot> snapshots) {}
+}
@@ -0,0 +1,138 @@
+package io.github.trquinn76.entitydemo.entity;
+
+import java.time.Duration;
+import java.util.Objects;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Creates a {@link ViewportPrefetcher} for each session, and records the metrics of all of them.
+ *
+ * Prefetching is configured with the {@code entitydemo.prefetch.*} properties.
+ */
+@Component
+public class ViewportPrefetcherFactory {
+
+    private final EntityService entityService;
+    private final EntityReadModel readModel;
+
+    private final boolean enabled;
+    private final int bufferSize;
+    private final int maxEntities;
+    private final Duration lookahead;
+    private final Duration idleTimeout;
+    private final Scheduler idleScheduler;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter prefetchCounter;
+    private final Counter cancelledCounter;
+
+    @Autowired
+    ViewportPrefetcherFactory(EntityService entityService, EntityReadModel readModel,
+            @Value("${entitydemo.prefetch.enabled:true}") boolean enabled,
+            @Value("${entitydemo.prefetch.buffer-size:4}") int bufferSize,
+            @Value("${entitydemo.prefetch.max-entities:5000}") int maxEntities,
+            @Value("${entitydemo.prefetch.lookahead:1s}") Duration lookahead,
+            @Value("${entitydemo.prefetch.idle-timeout:2s}") Duration idleTimeout, MeterRegistry meterRegistry) {
+        this(entityService, readModel, enabled, bufferSize, maxEntities, lookahead, idleTimeout, meterRegistry,
+                Schedulers.parallel());
+    }
+
+    // the scheduler of the idle timeouts may be replaced, eg: in tests.
+    ViewportPrefetcherFactory(EntityService entityService, EntityReadModel readModel, boolean enabled, int bufferSize,
+            int maxEntities, Duration lookahead, Duration idleTimeout, MeterRegistry meterRegistry,
+            Scheduler idleScheduler) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("entitydemo.prefetch.buffer-size must be at least 1: " + bufferSize);
+        }
+        if (idleTimeout.isNegative()) {
+            throw new IllegalArgumentException("entitydemo.prefetch.idle-timeout may not be negative: " + idleTimeout);
+        }
+        this.entityService = entityService;
+        this.readModel = readModel;
+        this.enabled = enabled;
+        this.bufferSize = bufferSize;
+        this.maxEntities = maxEntities;
+        this.lookahead = lookahead;
+        this.idleTimeout = idleTimeout;
+        this.idleScheduler = Objects.requireNonNull(idleScheduler);
+
+        hitCounter = Counter.builder("entitydemo.prefetch.lookups").tag("result", "hit")
+                .description("The number of viewport queries served from, or missing, the prefetch buffer")
+                .register(meterRegistry);
+        missCounter = Counter.builder("entitydemo.prefetch.lookups").tag("result", "miss")
+                .description("The number of viewport queries served from, or missing, the prefetch buffer")
+                .register(meterRegistry);
+        prefetchCounter = Counter.builder("entitydemo.prefetch.queries")
+                .description("The number of prefetch queries started").register(meterRegistry);
+        cancelledCounter = Counter.builder("entitydemo.prefetch.cancelled")
+                .description("The number of prefetch queries cancelled before they completed").register(meterRegistry);
+        Gauge.builder("entitydemo.prefetch.hit.ratio", this, ViewportPrefetcherFactory::getHitRatio)
+                .description("The fraction of viewport queries served from the prefetch buffer").register(meterRegistry);
+    }
+
+    /**
+     * @return a new {@link ViewportPrefetcher}, to be used by a single session.
+     */
+    public ViewportPrefetcher create() {
+        return new ViewportPrefetcher(this);
+    }
+
+    double getHitRatio() {
+        double lookups = hitCounter.count() + missCounter.count();
+        return lookups > 0.0 ? hitCounter.count() / lookups : 0.0;
+    }
+
+    EntityService getEntityService() {
+        return entityService;
+    }
+
+    EntityReadModel getReadModel() {
+        return readModel;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    int getMaxEntities() {
+        return maxEntities;
+    }
+
+    Duration getLookahead() {
+        return lookahead;
+    }
+
+    Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    Scheduler getIdleScheduler() {
+        return idleScheduler;
+    }
+
+    void recordLookup(boolean hit) {
+        (hit ? hitCounter : missCounter).increment();
+    }
+
+    void recordPrefetch() {
+        prefetchCounter.increment();
+    }
+
+    void recordCancelled() {
+        cancelledCounter.increment();
+    }
+}
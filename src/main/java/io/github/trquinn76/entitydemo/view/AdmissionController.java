@@ -0,0 +1,262 @@
+package io.github.trquinn76.entitydemo.view;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.springframework.lang.Nullable;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.server.Command;
+
+/**
+ * Limits the rate of the calls a {@link UI} makes from the browser, so that one busy or misbehaving client can not use
+ * up the node's capacity for everyone else.
+ *
+ * Each call is checked against a token bucket for the session, which is shared by all the {@link UI}'s of the session,
+ * so a client can not raise its limits by opening more tabs. Every query of the DB must also take a token from the
+ * bucket shared by the whole node, which so limits the load on the DB. A {@code moveEnd} which is not admitted is held
+ * rather than rejected, and is run once tokens are available. Only the latest held move is kept, as a later move makes
+ * an earlier viewport irrelevant, and a held move is rejected if it can not be run within the maximum delay. A move
+ * which is served from the prefetch buffer does not query the DB, and so only needs the session's token. Held moves
+ * are run through the view's {@link UiUpdateScheduler}, so they are batched with its other updates.
+ *
+ * As the node's capacity runs low, the calls are shed in order of how little they matter. Prefetches and mouse
+ * movements, which only update the coordinate labels, are rejected first. Double clicks are only limited per session,
+ * as they do not query anything.
+ *
+ * An instance is created per {@link UI} by the {@link AdmissionControllerFactory}, as moves are held for each map, and
+ * is thread safe.
+ */
+final class AdmissionController {
+
+    /**
+     * The calls from the browser which are controlled.
+     */
+    enum Endpoint {
+        MOVE_END("moveEnd"), MOUSE_MOVE("mouseMove"), MAP_DBL_CLICKED("mapDblClicked"), PREFETCH("prefetch"),
+        ENTITY_LIST("entityList");
+
+        private final String tag;
+
+        Endpoint(String tag) {
+            this.tag = tag;
+        }
+
+        String getTag() {
+            return tag;
+        }
+    }
+
+    /**
+     * What became of a call.
+     */
+    enum Result {
+        ADMITTED("admitted"), COALESCED("coalesced"), REJECTED("rejected");
+
+        private final String tag;
+
+        Result(String tag) {
+            this.tag = tag;
+        }
+
+        String getTag() {
+            return tag;
+        }
+    }
+
+    // the shortest wait before retrying a held query, so that retries do not spin while the node is overloaded.
+    private static final long MIN_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final String HELD_MOVE_UPDATE = "held-move";
+
+    private final UiUpdateScheduler updateScheduler;
+    private final TokenBucket moveEndBucket;
+    private final TokenBucket mouseMoveBucket;
+    private final TokenBucket dblClickBucket;
+    private final long maxDelayNanos;
+    private final AdmissionControllerFactory factory;
+
+    private final Object lock = new Object();
+    private @Nullable HeldMove heldMove = null;
+    private long heldSinceNanos;
+    private boolean retryScheduled = false;
+
+    AdmissionController(UiUpdateScheduler updateScheduler, TokenBucket moveEndBucket, TokenBucket mouseMoveBucket,
+            TokenBucket dblClickBucket, long maxDelayNanos, AdmissionControllerFactory factory) {
+        this.updateScheduler = Objects.requireNonNull(updateScheduler);
+        this.moveEndBucket = Objects.requireNonNull(moveEndBucket);
+        this.mouseMoveBucket = Objects.requireNonNull(mouseMoveBucket);
+        this.dblClickBucket = Objects.requireNonNull(dblClickBucket);
+        this.maxDelayNanos = maxDelayNanos;
+        this.factory = Objects.requireNonNull(factory);
+    }
+
+    /**
+     * Handles a move of the map now if it is admitted, otherwise holds it in place of any move already held, to be
+     * handled once it is admitted. Must be called with the {@link UI} locked, as held moves are also handled with it
+     * locked.
+     *
+     * @param cached shows the viewport without querying the DB if it can, eg: from the prefetch buffer, and returns
+     *               whether it did. May not be null.
+     * @param query  queries the DB for the viewport, if it was not cached. May not be null.
+     */
+    void admitMoveEnd(BooleanSupplier cached, Command query) {
+        HeldMove move = new HeldMove(Objects.requireNonNull(cached), Objects.requireNonNull(query));
+        synchronized (lock) {
+            if (heldMove != null) {
+                // the held move is for a viewport the map has already moved on from.
+                heldMove = move;
+                heldSinceNanos = factory.nanoTime();
+                factory.record(Endpoint.MOVE_END, Result.COALESCED);
+                return;
+            }
+        }
+        if (!tryHandle(move)) {
+            synchronized (lock) {
+                heldMove = move;
+                heldSinceNanos = factory.nanoTime();
+                scheduleRetry();
+            }
+        }
+    }
+
+    /**
+     * @return true if a prefetch query may run, false if it should be skipped.
+     */
+    boolean admitPrefetch() {
+        // prefetches are speculative, so they give way to the queries users are waiting on well before those run out.
+        boolean admitted = !factory.isEnabled() || (!factory.isOverloaded() && factory.tryAcquireQuery());
+        factory.record(Endpoint.PREFETCH, admitted ? Result.ADMITTED : Result.REJECTED);
+        return admitted;
+    }
+
+    /**
+     * Counts the load of the entity list against the node's capacity. The list must be loaded for the view to be
+     * usable, so it is never refused, but it leaves less capacity for other queries.
+     */
+    void chargeEntityList() {
+        if (factory.isEnabled()) {
+            factory.chargeQuery();
+        }
+        factory.record(Endpoint.ENTITY_LIST, Result.ADMITTED);
+    }
+
+    /**
+     * @return true if the mouse movement should be handled, false if it should be dropped.
+     */
+    boolean admitMouseMove() {
+        // the coordinate labels are cosmetic, so they are the first thing given up when the node is overloaded.
+        boolean admitted = !factory.isEnabled() || (!factory.isOverloaded() && mouseMoveBucket.tryAcquire());
+        factory.record(Endpoint.MOUSE_MOVE, admitted ? Result.ADMITTED : Result.REJECTED);
+        return admitted;
+    }
+
+    /**
+     * @return true if the double click should be handled, false if it should be dropped.
+     */
+    boolean admitMapDblClicked() {
+        boolean admitted = !factory.isEnabled() || dblClickBucket.tryAcquire();
+        factory.record(Endpoint.MAP_DBL_CLICKED, admitted ? Result.ADMITTED : Result.REJECTED);
+        return admitted;
+    }
+
+    /**
+     * Discards any held query, eg: when the {@link UI} is detached.
+     */
+    void close() {
+        synchronized (lock) {
+            heldMove = null;
+        }
+    }
+
+    // returns false, having taken no tokens, if the move is not admitted.
+    private boolean tryHandle(HeldMove move) {
+        if (!factory.isEnabled()) {
+            handle(move);
+            return true;
+        }
+        // the session's token is taken first, so that a session over its own limit does not use up the node's tokens.
+        if (!moveEndBucket.tryAcquire()) {
+            return false;
+        }
+        if (!move.missed) {
+            if (move.cached.getAsBoolean()) {
+                factory.record(Endpoint.MOVE_END, Result.ADMITTED);
+                return true;
+            }
+            // the buffer is only looked up once for each move, so that retrying a move while the node is overloaded
+            // is not counted as another miss.
+            move.missed = true;
+        }
+        if (!factory.tryAcquireQuery()) {
+            // the query is not run, so the session keeps its token rather than leaving an overload with none.
+            moveEndBucket.release();
+            return false;
+        }
+        factory.record(Endpoint.MOVE_END, Result.ADMITTED);
+        move.query.execute();
+        return true;
+    }
+
+    private void handle(HeldMove move) {
+        factory.record(Endpoint.MOVE_END, Result.ADMITTED);
+        if (!move.cached.getAsBoolean()) {
+            move.query.execute();
+        }
+    }
+
+    // must be called while holding the lock.
+    private void scheduleRetry() {
+        if (retryScheduled) {
+            return;
+        }
+        retryScheduled = true;
+        long delayNanos = Math.max(MIN_RETRY_NANOS,
+                Math.max(moveEndBucket.nanosUntilAvailable(), factory.nanosUntilQuery()));
+        factory.getRetryScheduler().schedule(this::retry, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // a held move which fails is passed to the session's error handler by the update scheduler, and one run after the
+    // UI is closed is dropped by it.
+    private void retry() {
+        updateScheduler.schedule(HELD_MOVE_UPDATE, this::runHeldMove);
+    }
+
+    private void runHeldMove() {
+        HeldMove move;
+        synchronized (lock) {
+            retryScheduled = false;
+            move = heldMove;
+            if (move == null) {
+                return;
+            }
+            if (factory.nanoTime() - heldSinceNanos > maxDelayNanos) {
+                // the node has stayed overloaded, so the map is left showing its current markers.
+                heldMove = null;
+                factory.record(Endpoint.MOVE_END, Result.REJECTED);
+                return;
+            }
+            heldMove = null;
+        }
+        if (!tryHandle(move)) {
+            synchronized (lock) {
+                // still held since the same time, so that it is rejected once it has waited the maximum delay.
+                heldMove = move;
+                scheduleRetry();
+            }
+        }
+    }
+
+    private static final class HeldMove {
+
+        private final BooleanSupplier cached;
+        private final Command query;
+        // only accessed by the thread handling the move, with the UI locked.
+        private boolean missed = false;
+
+        HeldMove(BooleanSupplier cached, Command query) {
+            this.cached = cached;
+            this.query = query;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package io.github.trquinn76.entitydemo.view;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.server.VaadinSession;
+
+import io.github.trquinn76.entitydemo.view.AdmissionController.Endpoint;
+import io.github.trquinn76.entitydemo.view.AdmissionController.Result;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Creates an {@link AdmissionController} for each {@link UI}, holds the token buckets shared by the {@link UI}'s of
+ * each session and the bucket shared by all of them, and records their metrics.
+ *
+ * The shared bucket limits the rate of DB queries made for all the views on the node, including prefetches. As it
+ * empties the node is considered overloaded, and the speculative and cosmetic calls are shed first so that the
+ * remaining capacity goes to the queries users are waiting on. The limits are configured with the
+ * {@code entitydemo.admission.*} properties.
+ */
+@Component
+class AdmissionControllerFactory {
+
+    private final boolean enabled;
+    private final double moveEndRate;
+    private final int moveEndBurst;
+    private final double mouseMoveRate;
+    private final double dblClickRate;
+    private final double shedThreshold;
+    private final Duration maxDelay;
+
+    private final LongSupplier clock;
+    private final Scheduler retryScheduler;
+    private final TokenBucket queryBucket;
+
+    private final Map<Endpoint, Map<Result, Counter>> counters = new EnumMap<>(Endpoint.class);
+
+    @Autowired
+    AdmissionControllerFactory(@Value("${entitydemo.admission.enabled:true}") boolean enabled,
+            @Value("${entitydemo.admission.session.move-end.rate:4}") double moveEndRate,
+            @Value("${entitydemo.admission.session.move-end.burst:8}") int moveEndBurst,
+            @Value("${entitydemo.admission.session.mouse-move.rate:100}") double mouseMoveRate,
+            @Value("${entitydemo.admission.session.dbl-click.rate:5}") double dblClickRate,
+            @Value("${entitydemo.admission.global.query.rate:200}") double queryRate,
+            @Value("${entitydemo.admission.global.query.burst:400}") int queryBurst,
+            @Value("${entitydemo.admission.global.shed-threshold:0.5}") double shedThreshold,
+            @Value("${entitydemo.admission.max-delay:2s}") Duration maxDelay, MeterRegistry meterRegistry) {
+        this(enabled, moveEndRate, moveEndBurst, mouseMoveRate, dblClickRate, queryRate, queryBurst, shedThreshold,
+                maxDelay, meterRegistry, System::nanoTime, Schedulers.parallel());
+    }
+
+    // the clock and the scheduler of retries may be replaced, eg: in tests.
+    AdmissionControllerFactory(boolean enabled, double moveEndRate, int moveEndBurst, double mouseMoveRate,
+            double dblClickRate, double queryRate, int queryBurst, double shedThreshold, Duration maxDelay,
+            MeterRegistry meterRegistry, LongSupplier clock, Scheduler retryScheduler) {
+        if (shedThreshold < 0.0 || shedThreshold > 1.0) {
+            throw new IllegalArgumentException(
+                    "entitydemo.admission.global.shed-threshold must be between 0 and 1: " + shedThreshold);
+        }
+        if (maxDelay.isNegative()) {
+            throw new IllegalArgumentException("entitydemo.admission.max-delay may not be negative: " + maxDelay);
+        }
+        this.enabled = enabled;
+        this.moveEndRate = moveEndRate;
+        this.moveEndBurst = moveEndBurst;
+        this.mouseMoveRate = mouseMoveRate;
+        this.dblClickRate = dblClickRate;
+        this.shedThreshold = shedThreshold;
+        this.maxDelay = maxDelay;
+        this.clock = Objects.requireNonNull(clock);
+        this.retryScheduler = Objects.requireNonNull(retryScheduler);
+        this.queryBucket = new TokenBucket(queryRate, queryBurst, clock);
+
+        for (Endpoint endpoint : Endpoint.values()) {
+            Map<Result, Counter> endpointCounters = new EnumMap<>(Result.class);
+            for (Result result : Result.values()) {
+                endpointCounters.put(result, Counter.builder("entitydemo.admission.calls")
+                        .description("The number of calls from the browser, by whether they were admitted, coalesced "
+                                + "with a later call, or rejected")
+                        .tag("endpoint", endpoint.getTag()).tag("result", result.getTag()).register(meterRegistry));
+            }
+            counters.put(endpoint, endpointCounters);
+        }
+        Gauge.builder("entitydemo.admission.query.capacity", queryBucket, TokenBucket::fill)
+                .description("The fraction of the node's DB query capacity currently available")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Creates an {@link AdmissionController} for the given {@link UI}, which shares its buckets with the controllers of
+     * every other {@link UI} in the same {@link VaadinSession}. So opening more tabs, or reloading, does not raise the
+     * session's limits. Must be called with the session locked, eg: while constructing a view.
+     *
+     * @param ui              the {@link UI} to control the calls of. May not be null.
+     * @param updateScheduler the {@link UiUpdateScheduler} of the {@link UI}, which runs held moves. May not be null.
+     * @return a new {@link AdmissionController} for the given {@link UI}.
+     */
+    AdmissionController create(UI ui, UiUpdateScheduler updateScheduler) {
+        VaadinSession session = ui.getSession();
+        SessionBuckets buckets = session.getAttribute(SessionBuckets.class);
+        if (buckets == null) {
+            // the session's buckets are sized to allow a second's worth of calls in a burst.
+            buckets = new SessionBuckets(new TokenBucket(moveEndRate, moveEndBurst, clock),
+                    new TokenBucket(mouseMoveRate, (int) Math.max(1.0, mouseMoveRate), clock),
+                    new TokenBucket(dblClickRate, (int) Math.max(1.0, dblClickRate), clock));
+            session.setAttribute(SessionBuckets.class, buckets);
+        }
+        return new AdmissionController(updateScheduler, buckets.moveEnd(), buckets.mouseMove(), buckets.dblClick(),
+                maxDelay.toNanos(), this);
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the current time in nanoseconds, as used by the token buckets.
+     */
+    long nanoTime() {
+        return clock.getAsLong();
+    }
+
+    /**
+     * @return the {@link Scheduler} which retries held moves.
+     */
+    Scheduler getRetryScheduler() {
+        return retryScheduler;
+    }
+
+    /**
+     * @return true if a DB query may run, taking the node's capacity for it.
+     */
+    boolean tryAcquireQuery() {
+        return queryBucket.tryAcquire();
+    }
+
+    /**
+     * Takes the node's capacity for a query which must run whether or not there is capacity for it.
+     */
+    void chargeQuery() {
+        queryBucket.charge();
+    }
+
+    /**
+     * @return the time until the node will have capacity for another DB query, in nanoseconds.
+     */
+    long nanosUntilQuery() {
+        return queryBucket.nanosUntilAvailable();
+    }
+
+    /**
+     * @return true if the node's DB query capacity has fallen below the shed threshold.
+     */
+    boolean isOverloaded() {
+        return queryBucket.fill() < shedThreshold;
+    }
+
+    void record(Endpoint endpoint, Result result) {
+        counters.get(endpoint).get(result).increment();
+    }
+
+    // the buckets shared by all the UI's of a session, held as an attribute of the session.
+    record SessionBuckets(TokenBucket moveEnd, TokenBucket mouseMove, TokenBucket dblClick) {}
+}
@@ -14,13 +14,20 @@ import com.vaadin.flow.data.binder.ValueContext;
 import com.vaadin.flow.data.converter.Converter;
 
 import io.github.trquinn76.entitydemo.entity.Entity;
+import io.github.trquinn76.entitydemo.entity.EntitySnapshot;
 
+/**
+ * A form for editing an {@link Entity}.
+ * 
+ * The form holds the shared {@link EntitySnapshot} being edited, and only makes a mutable copy of it when the edited
+ * values are written, so that the snapshot itself is never modified.
+ */
 public class EntityForm extends Composite<FormLayout> {
     
     private static final long serialVersionUID = -6413538782305151613L;
 
     private final Binder<Entity> binder;
-    private @Nullable Entity currentEntity = null;
+    private @Nullable EntitySnapshot currentSnapshot = null;
 
     IntegerField idField;
     TextField nameField;
@@ -93,21 +100,29 @@ public class EntityForm extends Composite<FormLayout> {
         updateEnabledState();
     }
     
-    public void setEntity(@Nullable Entity entity) {
-        this.currentEntity = entity;
-        binder.readBean(entity);
+    public void setEntity(@Nullable EntitySnapshot snapshot) {
+        this.currentSnapshot = snapshot;
+        // the copy is only used to populate the fields, the binder does not hold on to it.
+        binder.readBean(snapshot != null ? snapshot.toEntity() : null);
         updateEnabledState();
     }
     
+    /**
+     * @return a new {@link Entity} holding the edited values, or null if there is no {@link EntitySnapshot} being
+     *         edited or the edited values are not valid.
+     */
     public @Nullable Entity getEntity() {
-        if (currentEntity != null && binder.writeBeanIfValid(currentEntity)) {
-            return currentEntity;
+        if (currentSnapshot != null) {
+            Entity entity = currentSnapshot.toEntity();
+            if (binder.writeBeanIfValid(entity)) {
+                return entity;
+            }
         }
         return null;
     }
     
     protected void updateEnabledState() {
-        if (currentEntity == null) {
+        if (currentSnapshot == null) {
             this.getContent().setEnabled(false);
         }
         else {
@@ -1,10 +1,17 @@
 package io.github.trquinn76.entitydemo.view;
 
 import java.time.Duration;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+
 import com.vaadin.flow.component.ClientCallable;
 import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.button.Button;
@@ -20,6 +27,13 @@ import com.vaadin.flow.theme.lumo.LumoUtility;
 
 import io.github.trquinn76.entitydemo.entity.Entity;
 import io.github.trquinn76.entitydemo.entity.EntityService;
+import io.github.trquinn76.entitydemo.entity.EntitySnapshot;
+import io.github.trquinn76.entitydemo.entity.PanMotion;
+import io.github.trquinn76.entitydemo.entity.Viewport;
+import io.github.trquinn76.entitydemo.entity.ViewportPrefetcher;
+import io.github.trquinn76.entitydemo.entity.ViewportPrefetcherFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Sinks;
 import software.xdev.vaadin.maps.leaflet.MapContainer;
 import software.xdev.vaadin.maps.leaflet.basictypes.LLatLng;
@@ -32,31 +46,69 @@ import software.xdev.vaadin.maps.leaflet.registry.LDefaultComponentManagementReg
 
 /**
  * This view shows up when a user navigates to the root ('/') of the application.
+ * 
+ * The view only holds the Ids of the {@link Entity}'s it displays, along with its UI state. The {@link EntitySnapshot}'s
+ * themselves are shared by all sessions, and are looked up from the {@link EntityService} as needed.
  */
 @Route("")
 public final class MainView extends Main {
     
+    private static final Logger log = LoggerFactory.getLogger(MainView.class);
+    
     private static final String ID = "entity-demo-view";
     
+    // markers are added in chunks as the entities are streamed, so the first markers appear without waiting for the
+    // whole query to complete.
+    private static final int MARKER_CHUNK_SIZE = 200;
+    private static final Duration MARKER_CHUNK_TIMEOUT = Duration.ofMillis(50);
+    
+    // keys of updates where only the latest matters.
+    private static final String COORDINATE_UPDATE = "coordinates";
+    private static final String ENTITY_LIST_UPDATE = "entity-list";
+    
     private EntityService entityService;
     
     private UI ui;
+    private UiUpdateScheduler updateScheduler;
+    private ViewportPrefetcher prefetcher;
+    private AdmissionController admissionController;
     
     private EntityForm entityForm;
-    private ListBox<Entity> entityList;
+    private ListBox<Long> entityList;
     
     private LComponentManagementRegistry mapRegistry;
     private LMap map;
-    private Set<LMarker> markers = new HashSet<>();
+    private Map<Long, PlacedMarker> markers = new HashMap<>();
+    private @Nullable Disposable markerStream = null;
+    private long markerGeneration = 0L;
+    
+    // read by the SessionMemoryMonitor outside of the UI lock.
+    private final String sessionKey;
+    private volatile int listedEntityCount = 0;
+    private volatile int markerCount = 0;
     
     private Sinks.Many<MouseMoveData> mouseMovementSink;
     
     private Span coordinateLabel;
     private Span pointLabel;
 
-    MainView(EntityService entityService) {
+    MainView(EntityService entityService, SessionMemoryMonitor memoryMonitor,
+            UiUpdateSchedulerFactory updateSchedulerFactory, ViewportPrefetcherFactory prefetcherFactory,
+            AdmissionControllerFactory admissionControllerFactory) {
         this.entityService = Objects.requireNonNull(entityService);
         this.ui = UI.getCurrent();
+        this.updateScheduler = updateSchedulerFactory.create(ui);
+        this.prefetcher = prefetcherFactory.create();
+        this.admissionController = admissionControllerFactory.create(ui, updateScheduler);
+        this.sessionKey = Integer.toHexString(System.identityHashCode(ui.getSession()));
+        
+        addAttachListener(event -> memoryMonitor.register(this));
+        addDetachListener(event -> {
+            memoryMonitor.unregister(this);
+            cancelMarkerStream();
+            prefetcher.close();
+            admissionController.close();
+        });
         
         this.setId(ID);
         this.setSizeFull();
@@ -79,12 +131,12 @@ public final class MainView extends Main {
     @ClientCallable
     public void mapDblClicked(double lat, double lng)
     {
-        lng = normaliseLongitude(lng);
+        if (!admissionController.admitMapDblClicked()) {
+            return;
+        }
+        lng = Viewport.normaliseLongitude(lng);
         
-        Entity newEntity = new Entity();
-        newEntity.setName("New Entity");
-        newEntity.setLatitudeDegrees(lat);
-        newEntity.setLongitudeDegrees(lng);
+        EntitySnapshot newEntity = EntitySnapshot.draft("New Entity", lat, lng);
         
         ui.access(() -> {
             entityList.clear();
@@ -95,17 +147,38 @@ public final class MainView extends Main {
     /**
      * Called on a move end event on the map.
      * 
+     * The markers are only updated if the move is admitted by the {@link AdmissionController}. Otherwise the move is
+     * held, and replaced by any later move, until it is admitted. Moves within a prefetched viewport do not query the
+     * DB, so they do not use the node's query capacity.
+     * 
      * @param northDegrees the northern bound of the map view at the end of the move.
      * @param westDegrees the western bound of the map view at the end of the move.
      * @param southDegrees the southern bound of the map view at the end of the move.
      * @param eastDegrees the eastern bound of the map view at the end of the move.
+     * @param panLatDegrees the distance the centre of the map moved north during the move (in degrees).
+     * @param panLngDegrees the distance the centre of the map moved east during the move (in degrees).
+     * @param panMillis how long the move took, in milliseconds.
      */
     @ClientCallable
-    public void moveEnd(double northDegrees, double westDegrees, double southDegrees, double eastDegrees) {
-        westDegrees = normaliseLongitude(westDegrees);
-        eastDegrees = normaliseLongitude(eastDegrees);
+    public void moveEnd(double northDegrees, double westDegrees, double southDegrees, double eastDegrees,
+            double panLatDegrees, double panLngDegrees, double panMillis) {
+        westDegrees = Viewport.normaliseLongitude(westDegrees);
+        eastDegrees = Viewport.normaliseLongitude(eastDegrees);
+        Viewport viewport = new Viewport(northDegrees, southDegrees, westDegrees, eastDegrees);
+        PanMotion motion = new PanMotion(panLatDegrees, panLngDegrees, Math.round(panMillis));
         
-        repopulateMarkers(northDegrees, westDegrees, southDegrees, eastDegrees);
+        admissionController.admitMoveEnd(() -> {
+            List<EntitySnapshot> prefetched = prefetcher.take(viewport);
+            if (prefetched == null) {
+                return false;
+            }
+            repopulateMarkers(Flux.fromIterable(prefetched));
+            prefetcher.prefetch(viewport, motion, admissionController::admitPrefetch);
+            return true;
+        }, () -> {
+            repopulateMarkers(entityService.streamEntities(viewport));
+            prefetcher.prefetch(viewport, motion, admissionController::admitPrefetch);
+        });
     }
     
     /**
@@ -118,36 +191,83 @@ public final class MainView extends Main {
      */
     @ClientCallable
     public void mouseMove(double lat, double lng, double x, double y) {
+        if (!admissionController.admitMouseMove()) {
+            return;
+        }
         MouseMoveData data = new MouseMoveData(lat, lng, x, y);
         mouseMovementSink.tryEmitNext(data);
     }
     
-    private void repopulateMarkers(double northDegrees, double westDegrees, double southDegrees, double eastDegrees) {
-        this.entityService.getEntities(northDegrees, southDegrees, westDegrees, eastDegrees).thenAccept(entityList -> {
-            ui.access(() -> {
-                markers.forEach(marker -> marker.remove());
-                markers.clear();
-
-                for (Entity entity : entityList) {
-                    LMarker marker = createMarkerForEntity(entity);
-                    marker.addTo(map);
-                    markers.add(marker);
+    /**
+     * @return the per-session state currently held by this view.
+     */
+    SessionMemoryMonitor.Footprint footprint() {
+        return new SessionMemoryMonitor.Footprint(sessionKey, ui.getUIId(), listedEntityCount, markerCount);
+    }
+    
+    private void repopulateMarkers(Flux<EntitySnapshot> snapshots) {
+        cancelMarkerStream();
+        // updates from a previous stream which are still queued are ignored once the generation has moved on.
+        final long generation = ++markerGeneration;
+        final Set<Long> streamedIds = new HashSet<>();
+        
+        markerStream = snapshots.bufferTimeout(MARKER_CHUNK_SIZE, MARKER_CHUNK_TIMEOUT).subscribe(chunk -> {
+                    updateScheduler.schedule(() -> {
+                        if (generation == markerGeneration) {
+                            addMarkers(chunk, streamedIds);
+                        }
+                    });
+                }, error -> {
+                    log.warn("Failed to stream the entities within the map bounds", error);
+                }, () -> {
+                    updateScheduler.schedule(() -> {
+                        if (generation == markerGeneration) {
+                            removeMarkersExcept(streamedIds);
+                        }
+                    });
+                });
+    }
+    
+    private void cancelMarkerStream() {
+        if (markerStream != null) {
+            markerStream.dispose();
+            markerStream = null;
+        }
+    }
+    
+    // keeps the markers for snapshots which have not changed, rather than rebuilding every marker.
+    private void addMarkers(List<EntitySnapshot> snapshots, Set<Long> streamedIds) {
+        for (EntitySnapshot snapshot : snapshots) {
+            streamedIds.add(snapshot.id());
+            PlacedMarker placed = markers.get(snapshot.id());
+            if (placed == null || !placed.snapshot().equals(snapshot)) {
+                if (placed != null) {
+                    placed.marker().remove();
                 }
-            });
-        });
+                placed = new PlacedMarker(snapshot, createMarkerForEntity(snapshot));
+                placed.marker().addTo(map);
+                markers.put(snapshot.id(), placed);
+            }
+        }
+        markerCount = markers.size();
     }
     
-    private LMarker createMarkerForEntity(Entity entity) {
-        LMarkerOptions options = new LMarkerOptions().withTitle(entity.getName());
-        LLatLng latLng = new LLatLng(mapRegistry, entity.getLatitudeDegrees(), entity.getLongitudeDegrees());
-        LMarker marker = new LMarker(mapRegistry, latLng, options).bindPopup(entity.getName());
-        return marker;
+    private void removeMarkersExcept(Set<Long> streamedIds) {
+        markers.entrySet().removeIf(entry -> {
+            if (streamedIds.contains(entry.getKey())) {
+                return false;
+            }
+            entry.getValue().marker().remove();
+            return true;
+        });
+        markerCount = markers.size();
     }
     
-    private double normaliseLongitude(double longitudeDegrees) {
-        while (longitudeDegrees < -180.0) longitudeDegrees += 360.0;
-        while (longitudeDegrees > 180.0) longitudeDegrees -= 360.0;
-        return longitudeDegrees;
+    private LMarker createMarkerForEntity(EntitySnapshot entity) {
+        LMarkerOptions options = new LMarkerOptions().withTitle(entity.name());
+        LLatLng latLng = new LLatLng(mapRegistry, entity.latitudeDegrees(), entity.longitudeDegrees());
+        LMarker marker = new LMarker(mapRegistry, latLng, options).bindPopup(entity.name());
+        return marker;
     }
     
     private Div initEntityManagementDiv() {
@@ -156,15 +276,18 @@ public final class MainView extends Main {
         
         addClassName(LumoUtility.Padding.MEDIUM);
         entityList = new ListBox<>();
-        entityList.setRenderer(new ComponentRenderer<>(entity -> {
+        entityList.setRenderer(new ComponentRenderer<>(id -> {
             Div div = new Div();
-            div.setText(entity.getName());
+            EntitySnapshot entity = entityService.findSnapshot(id);
+            div.setText(entity != null ? entity.name() : "");
             return div;
         }));
         
+        admissionController.chargeEntityList();
         this.entityService.getAll().thenAccept((list) -> {
-            ui.access(() -> {
-                entityList.setItems(list);
+            updateScheduler.schedule(ENTITY_LIST_UPDATE, () -> {
+                entityList.setItems(list.stream().map(EntitySnapshot::id).toList());
+                listedEntityCount = list.size();
             });
         });
         
@@ -173,7 +296,7 @@ public final class MainView extends Main {
         entityList.addValueChangeListener(event -> {
             if (!event.getHasValue().isEmpty()) {
                 ui.access(() -> {
-                    entityForm.setEntity(event.getValue());
+                    entityForm.setEntity(entityService.findSnapshot(event.getValue()));
                 });
             }
         });
@@ -187,16 +310,27 @@ public final class MainView extends Main {
         newEntityButton.addClickListener(event -> {
             ui.access(() -> {
                 entityList.clear();
-                entityForm.setEntity(new Entity());
+                entityForm.setEntity(EntitySnapshot.draft(null, null, null));
             });
         });
         saveEntityButton.addClickListener(event -> {
+            Entity editedEntity = entityForm.getEntity();
+            if (editedEntity == null) {
+                // nothing is being edited, or the edited values are not valid.
+                return;
+            }
             // the returned upserted Entity may have it's ID set. 
-            this.entityService.upsertEntity(entityForm.getEntity()).thenAccept((upsertedEntity) -> {
-                ui.access(() -> {
-                    entityList.getListDataView().addItem(upsertedEntity);
-                    entityList.setValue(upsertedEntity);
-                    // setting the list selection will cause the entity form to be updated.
+            this.entityService.upsertEntity(editedEntity).thenAccept((upsertedEntity) -> {
+                updateScheduler.schedule(() -> {
+                    var dataView = entityList.getListDataView();
+                    if (dataView.contains(upsertedEntity.id())) {
+                        dataView.refreshItem(upsertedEntity.id());
+                    } else {
+                        dataView.addItem(upsertedEntity.id());
+                    }
+                    listedEntityCount = dataView.getItemCount();
+                    entityList.setValue(upsertedEntity.id());
+                    entityForm.setEntity(upsertedEntity);
                 });
             });
         });
@@ -234,8 +368,11 @@ public final class MainView extends Main {
         entityList.addValueChangeListener(event -> {
             if (!event.getHasValue().isEmpty()) {
                 ui.access(() -> {
-                    LLatLng latLng = new LLatLng(mapRegistry, event.getValue().getLatitudeDegrees(), event.getValue().getLongitudeDegrees());
-                    map.flyTo(latLng);
+                    EntitySnapshot entity = entityService.findSnapshot(event.getValue());
+                    if (entity != null) {
+                        LLatLng latLng = new LLatLng(mapRegistry, entity.latitudeDegrees(), entity.longitudeDegrees());
+                        map.flyTo(latLng);
+                    }
                 });
             }
         });
@@ -266,8 +403,9 @@ public final class MainView extends Main {
         // sampling every 50 milliseconds. Found longer sampling times personally annoying in my local development
         // environment, so set it to this speed. In a real deployment a longer sampling time of 100 to 250 milliseconds
         // might be preferred to manage/prevent flooding of network messages.
+        // the update scheduler will further merge these updates, so only the last text is pushed per frame budget.
         mouseMovementSink.asFlux().sample(Duration.ofMillis(50)).subscribe(mouseMoveData -> {
-            ui.access(() -> {
+            updateScheduler.schedule(COORDINATE_UPDATE, () -> {
                 coordinateLabel.setText("Coordinate: " + mouseMoveData.lat() + ", " + mouseMoveData.lng());
                 pointLabel.setText("X: " + mouseMoveData.x() + ", Y: " + mouseMoveData.y());
             });
@@ -279,9 +417,17 @@ public final class MainView extends Main {
     private void initMapEventCallbacks() {
         ui.access(() -> {
             map.on("dblclick", "e => document.getElementById('" + ID + "').$server.mapDblClicked(e.latlng.lat, e.latlng.lng)");
+            // the centre and time at the start of each move are kept, so the end of the move can report the pan.
+            map.on("movestart", "e => { "
+                    + "const centre = e.target.getCenter(); "
+                    + "e.target._panStart = { lat: centre.lat, lng: centre.lng, time: performance.now() }; "
+                    + "}");
             map.on("moveend", "e => { "
                     + "const bounds = e.target.getBounds(); "
-                    + "document.getElementById('" + ID + "').$server.moveEnd(bounds._northEast.lat, bounds._southWest.lng, bounds._southWest.lat, bounds._northEast.lng); "
+                    + "const centre = e.target.getCenter(); "
+                    + "const start = e.target._panStart || { lat: centre.lat, lng: centre.lng, time: performance.now() }; "
+                    + "document.getElementById('" + ID + "').$server.moveEnd(bounds._northEast.lat, bounds._southWest.lng, bounds._southWest.lat, bounds._northEast.lng, "
+                    + "centre.lat - start.lat, centre.lng - start.lng, performance.now() - start.time); "
                     + "}");
             
             map.on("mousemove", "e => { "
@@ -291,4 +437,6 @@ public final class MainView extends Main {
     }
     
     static record MouseMoveData(double lat, double lng, double x, double y) {}
+    
+    static record PlacedMarker(EntitySnapshot snapshot, LMarker marker) {}
 }
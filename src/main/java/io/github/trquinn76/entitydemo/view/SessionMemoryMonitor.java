@@ -0,0 +1,102 @@
+package io.github.trquinn76.entitydemo.view;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Tracks the per-session state retained by each open {@link MainView}, for monitoring.
+ *
+ * Only the state which grows with the number of entities displayed is tracked, ie: the items in the entity list and the
+ * markers on the map. These are reported as counts rather than as an estimate of bytes, as the memory held for each
+ * item depends on the Vaadin and Leaflet versions, and has not been measured. The entity list is likely to be the
+ * largest cost, as its {@code ComponentRenderer} builds a component for every listed entity in every session. The
+ * entity snapshots themselves are shared by all sessions, so are not included.
+ *
+ * The totals are published as Micrometer gauges, and the per-session footprints are available from the
+ * {@code sessionmemory} actuator endpoint.
+ *
+ * @see io.github.trquinn76.entitydemo.entity.EntityReadModel
+ */
+@Component
+@Endpoint(id = "sessionmemory")
+class SessionMemoryMonitor {
+
+    private final Set<MainView> views = ConcurrentHashMap.newKeySet();
+
+    SessionMemoryMonitor(MeterRegistry meterRegistry) {
+        Gauge.builder("entitydemo.session.views", views, Set::size)
+                .description("The number of open main views").register(meterRegistry);
+        Gauge.builder("entitydemo.session.listed.entities", this, monitor -> monitor.total(Footprint::listedEntities))
+                .description("The number of entities listed by all open main views").register(meterRegistry);
+        Gauge.builder("entitydemo.session.markers", this, monitor -> monitor.total(Footprint::markers))
+                .description("The number of markers on the maps of all open main views").register(meterRegistry);
+    }
+
+    void register(MainView view) {
+        views.add(view);
+    }
+
+    void unregister(MainView view) {
+        views.remove(view);
+    }
+
+    private long total(ToLongFunction<Footprint> value) {
+        long total = 0L;
+        for (MainView view : views) {
+            total += value.applyAsLong(view.footprint());
+        }
+        return total;
+    }
+
+    @ReadOperation
+    public Map<String, Object> sessionMemory() {
+        List<Footprint> footprints = new ArrayList<>();
+        long listedEntities = 0L;
+        long markers = 0L;
+        for (MainView view : views) {
+            Footprint footprint = view.footprint();
+            footprints.add(footprint);
+            listedEntities += footprint.listedEntities();
+            markers += footprint.markers();
+        }
+        // the sessions holding the most first, as they are the ones worth looking at.
+        footprints.sort(Comparator.comparingLong(Footprint::items).reversed());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("views", footprints.size());
+        result.put("listedEntities", listedEntities);
+        result.put("markers", markers);
+        result.put("sessions", footprints);
+        return result;
+    }
+
+    /**
+     * The per-session state held by a {@link MainView}.
+     *
+     * @param sessionKey     identifies the Vaadin session of the view. It is not the HTTP session Id, as this is
+     *                       exposed by the actuator endpoint, and the HTTP session Id would allow the session to be
+     *                       taken over.
+     * @param uiId           the Id of the Vaadin UI of the view, unique within its session.
+     * @param listedEntities the number of entity Id's in the entity list, each rendered as a component.
+     * @param markers        the number of markers on the map.
+     */
+    record Footprint(String sessionKey, int uiId, int listedEntities, int markers) {
+
+        long items() {
+            return (long) listedEntities + markers;
+        }
+    }
+}
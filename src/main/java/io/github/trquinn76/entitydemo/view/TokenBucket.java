@@ -0,0 +1,104 @@
+package io.github.trquinn76.entitydemo.view;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket rate limiter. The bucket holds up to {@code capacity} tokens, which are refilled continuously at
+ * {@code ratePerSecond}, and each admitted call takes one token. So calls are admitted in bursts of up to the capacity,
+ * and at the rate on average.
+ *
+ * Thread safe.
+ */
+final class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = Duration.ofSeconds(1).toNanos();
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private final LongSupplier clock;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * @param ratePerSecond the rate the bucket is refilled. Must be positive.
+     * @param capacity      the maximum number of tokens held, and so the largest burst admitted. Must be at least 1.
+     */
+    TokenBucket(double ratePerSecond, int capacity) {
+        this(ratePerSecond, capacity, System::nanoTime);
+    }
+
+    /**
+     * @param ratePerSecond the rate the bucket is refilled. Must be positive.
+     * @param capacity      the maximum number of tokens held, and so the largest burst admitted. Must be at least 1.
+     * @param clock         the source of the current time in nanoseconds, eg: {@link System#nanoTime()}. May not be
+     *                      null.
+     */
+    TokenBucket(double ratePerSecond, int capacity, LongSupplier clock) {
+        if (ratePerSecond <= 0.0) {
+            throw new IllegalArgumentException("The token bucket rate must be positive: " + ratePerSecond);
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The token bucket capacity must be at least 1: " + capacity);
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = ratePerSecond / NANOS_PER_SECOND;
+        this.clock = Objects.requireNonNull(clock);
+        this.tokens = capacity;
+        this.lastRefillNanos = clock.getAsLong();
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @return true if a token was taken, and so the call may proceed.
+     */
+    synchronized boolean tryAcquire() {
+        refill(clock.getAsLong());
+        if (tokens >= 1.0) {
+            tokens -= 1.0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Takes a token whether or not one is available, so the bucket may go into debt. Used for work which must be done,
+     * but should still count against the limit.
+     */
+    synchronized void charge() {
+        refill(clock.getAsLong());
+        tokens -= 1.0;
+    }
+
+    /**
+     * Returns a token taken by {@link #tryAcquire()}, for a call which did not go ahead after all.
+     */
+    synchronized void release() {
+        refill(clock.getAsLong());
+        tokens = Math.min(capacity, tokens + 1.0);
+    }
+
+    /**
+     * @return the time until a token will be available, in nanoseconds. Zero if one is available now.
+     */
+    synchronized long nanosUntilAvailable() {
+        refill(clock.getAsLong());
+        return tokens >= 1.0 ? 0L : (long) Math.ceil((1.0 - tokens) / tokensPerNano);
+    }
+
+    /**
+     * @return the fraction of the capacity currently available, from 0 when empty to 1 when full.
+     */
+    synchronized double fill() {
+        refill(clock.getAsLong());
+        return Math.max(0.0, tokens) / capacity;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,114 @@
+package io.github.trquinn76.entitydemo.view;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
+import com.vaadin.flow.server.Command;
+import com.vaadin.flow.server.ErrorEvent;
+
+/**
+ * Queues updates to a {@link UI}, and applies them together in a single {@code ui.access()} call at most once per
+ * frame budget.
+ *
+ * With {@code @Push} enabled, each {@code ui.access()} made from a background thread may cause its own push to the
+ * browser. Batching the updates reduces the number of WebSocket messages sent under heavy interaction. Updates
+ * scheduled with the same key replace each other, so only the latest one is applied, eg: only the last text of the
+ * coordinate label matters. Updates are applied in the order they were last scheduled.
+ *
+ * An update which throws is passed to the session's error handler, and the rest of the batch is still applied.
+ *
+ * Updates scheduled from within a request to the UI, eg: a click listener, do not need to use this, as their changes
+ * are sent in the response to that request.
+ */
+final class UiUpdateScheduler {
+
+    private final UI ui;
+    private final long frameBudgetNanos;
+    private final UiUpdateSchedulerFactory factory;
+
+    private final Object lock = new Object();
+    private Map<Object, Command> pending = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+    private long lastFlushNanos;
+
+    UiUpdateScheduler(UI ui, long frameBudgetNanos, UiUpdateSchedulerFactory factory) {
+        this.ui = Objects.requireNonNull(ui);
+        this.frameBudgetNanos = frameBudgetNanos;
+        this.factory = Objects.requireNonNull(factory);
+        this.lastFlushNanos = factory.nanoTime() - frameBudgetNanos;
+    }
+
+    /**
+     * Schedules an update which will always be applied.
+     *
+     * @param command the update to apply to the UI. May not be null.
+     */
+    void schedule(Command command) {
+        schedule(new Object(), command);
+    }
+
+    /**
+     * Schedules an update, replacing any pending update with the same key.
+     *
+     * @param key     identifies updates which replace each other. May not be null.
+     * @param command the update to apply to the UI. May not be null.
+     */
+    void schedule(Object key, Command command) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(command);
+
+        long delayNanos = -1L;
+        synchronized (lock) {
+            if (pending.remove(key) != null) {
+                factory.recordMerged();
+            }
+            pending.put(key, command);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                delayNanos = Math.max(0L, lastFlushNanos + frameBudgetNanos - factory.nanoTime());
+            }
+        }
+        factory.recordScheduled();
+
+        if (delayNanos >= 0L) {
+            factory.getFlushScheduler().schedule(this::flush, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flush() {
+        List<Command> batch;
+        synchronized (lock) {
+            batch = new ArrayList<>(pending.values());
+            pending = new LinkedHashMap<>();
+            flushScheduled = false;
+            lastFlushNanos = factory.nanoTime();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            ui.access(() -> apply(batch));
+            factory.recordPush();
+        } catch (UIDetachedException e) {
+            // the UI has been closed, so there is nothing left to update.
+        }
+    }
+
+    // each update is applied separately, so one which fails does not stop the rest of the batch from being applied.
+    private void apply(List<Command> batch) {
+        for (Command command : batch) {
+            try {
+                command.execute();
+            } catch (RuntimeException e) {
+                ui.getSession().getErrorHandler().error(new ErrorEvent(e));
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package io.github.trquinn76.entitydemo.view;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.vaadin.flow.component.UI;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Creates a {@link UiUpdateScheduler} for each {@link UI}, and records the metrics of all of them.
+ *
+ * The frame budget, the minimum time between pushes to a single {@link UI}, is configured with the
+ * {@code entitydemo.ui.frame-budget} property.
+ */
+@Component
+class UiUpdateSchedulerFactory {
+
+    private static final long NANOS_PER_SECOND = Duration.ofSeconds(1).toNanos();
+
+    private final Duration frameBudget;
+    private final LongSupplier clock;
+    private final Scheduler flushScheduler;
+
+    private final Counter scheduledCounter;
+    private final Counter mergedCounter;
+    private final Counter pushCounter;
+
+    // pushes are counted in one second windows to report the push rate.
+    private long windowStartNanos;
+    private long windowPushes = 0L;
+    private double pushesPerSecond = 0.0;
+
+    @Autowired
+    UiUpdateSchedulerFactory(@Value("${entitydemo.ui.frame-budget:50ms}") Duration frameBudget,
+            MeterRegistry meterRegistry) {
+        this(frameBudget, meterRegistry, System::nanoTime, Schedulers.parallel());
+    }
+
+    // the clock and the scheduler of flushes may be replaced, eg: in tests.
+    UiUpdateSchedulerFactory(Duration frameBudget, MeterRegistry meterRegistry, LongSupplier clock,
+            Scheduler flushScheduler) {
+        if (frameBudget.isNegative()) {
+            throw new IllegalArgumentException("entitydemo.ui.frame-budget may not be negative: " + frameBudget);
+        }
+        this.frameBudget = frameBudget;
+        this.clock = Objects.requireNonNull(clock);
+        this.flushScheduler = Objects.requireNonNull(flushScheduler);
+        this.windowStartNanos = clock.getAsLong();
+
+        scheduledCounter = Counter.builder("entitydemo.ui.updates.scheduled")
+                .description("The number of UI updates scheduled").register(meterRegistry);
+        mergedCounter = Counter.builder("entitydemo.ui.updates.merged")
+                .description("The number of UI updates replaced by a later update with the same key")
+                .register(meterRegistry);
+        pushCounter = Counter.builder("entitydemo.ui.pushes")
+                .description("The number of batches of UI updates applied, each of which may push to the browser")
+                .register(meterRegistry);
+        Gauge.builder("entitydemo.ui.pushes.per.second", this, UiUpdateSchedulerFactory::getPushesPerSecond)
+                .description("The rate of batches of UI updates applied over the last second").register(meterRegistry);
+    }
+
+    /**
+     * @param ui the {@link UI} to schedule updates for. May not be null.
+     * @return a new {@link UiUpdateScheduler} for the given {@link UI}.
+     */
+    UiUpdateScheduler create(UI ui) {
+        return new UiUpdateScheduler(ui, frameBudget.toNanos(), this);
+    }
+
+    /**
+     * @return the current time in nanoseconds, as used to space the pushes.
+     */
+    long nanoTime() {
+        return clock.getAsLong();
+    }
+
+    /**
+     * @return the {@link Scheduler} which applies the batches of updates.
+     */
+    Scheduler getFlushScheduler() {
+        return flushScheduler;
+    }
+
+    void recordScheduled() {
+        scheduledCounter.increment();
+    }
+
+    void recordMerged() {
+        mergedCounter.increment();
+    }
+
+    void recordPush() {
+        pushCounter.increment();
+        synchronized (this) {
+            rollWindow(clock.getAsLong());
+            windowPushes++;
+        }
+    }
+
+    synchronized double getPushesPerSecond() {
+        rollWindow(clock.getAsLong());
+        return pushesPerSecond;
+    }
+
+    private void rollWindow(long now) {
+        long elapsed = now - windowStartNanos;
+        if (elapsed >= NANOS_PER_SECOND) {
+            // an idle period longer than a window means nothing was pushed in the last second.
+            pushesPerSecond = elapsed < 2 * NANOS_PER_SECOND ? (double) windowPushes * NANOS_PER_SECOND / elapsed
+                    : 0.0;
+            windowStartNanos = now;
+            windowPushes = 0L;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package io.github.trquinn76.entitydemo.entity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+class EntityJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoversAfterCleanShutdown() {
+        EntityJournal journal = createJournal();
+        journal.start(2L, List.of(snapshot(1L, "Adelaide", 1L), snapshot(2L, "Melbourne", 2L)));
+        journal.appendUpsert(snapshot(3L, "Sydney", 3L));
+        journal.appendUpsert(snapshot(1L, null, 4L));
+        journal.appendRemove(2L, 5L);
+        journal.destroy();
+
+        EntityJournal.Recovered recovered = createJournal().recover();
+        assertNotNull(recovered);
+        assertEquals(5L, recovered.version());
+        assertTrue(recovered.clean());
+        assertEquals(Set.of(snapshot(1L, null, 4L), snapshot(3L, "Sydney", 3L)), Set.copyOf(recovered.snapshots()));
+        assertEquals(3L, recovered.maxId());
+    }
+
+    @Test
+    void replaysJournalAfterCrash() {
+        EntityJournal journal = createJournal();
+        journal.start(0L, List.of());
+        journal.appendUpsert(snapshot(1L, "Adelaide", 1L));
+        journal.appendUpsert(snapshot(2L, "Melbourne", 2L));
+
+        // no close record is written, as if the process had crashed.
+        EntityJournal.Recovered recovered = createJournal().recover();
+        journal.destroy();
+
+        assertNotNull(recovered);
+        assertEquals(2L, recovered.version());
+        assertFalse(recovered.clean());
+        assertEquals(Set.of(snapshot(1L, "Adelaide", 1L), snapshot(2L, "Melbourne", 2L)),
+                Set.copyOf(recovered.snapshots()));
+    }
+
+    @Test
+    void stopsReplayAtCorruptRecord() throws IOException {
+        EntityJournal journal = createJournal();
+        journal.start(0L, List.of());
+        journal.appendUpsert(snapshot(1L, "Adelaide", 1L));
+        journal.appendUpsert(snapshot(2L, "Melbourne", 2L));
+        journal.destroy();
+
+        try (FileChannel file = FileChannel.open(journalFile(1L), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // flips a byte in the name of the second record, after its header, type, version and Id.
+            long position = secondRecordOffset(file) + 2 * Integer.BYTES + 1 + 2 * Long.BYTES + 2 * Double.BYTES
+                    + Integer.BYTES;
+            ByteBuffer value = ByteBuffer.allocate(1);
+            file.read(value, position);
+            value.put(0, (byte) ~value.get(0));
+            file.write(value.rewind(), position);
+        }
+
+        EntityJournal.Recovered recovered = createJournal().recover();
+        assertNotNull(recovered);
+        assertEquals(1L, recovered.version());
+        assertFalse(recovered.clean());
+        assertEquals(List.of(snapshot(1L, "Adelaide", 1L)), recovered.snapshots());
+    }
+
+    @Test
+    void stopsReplayAtTruncatedRecord() throws IOException {
+        EntityJournal journal = createJournal();
+        journal.start(0L, List.of());
+        journal.appendUpsert(snapshot(1L, "Adelaide", 1L));
+        journal.appendUpsert(snapshot(2L, "Melbourne", 2L));
+        journal.destroy();
+
+        try (FileChannel file = FileChannel.open(journalFile(1L), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            file.truncate(secondRecordOffset(file) + 2 * Integer.BYTES + 4);
+        }
+
+        EntityJournal.Recovered recovered = createJournal().recover();
+        assertNotNull(recovered);
+        assertEquals(1L, recovered.version());
+        assertFalse(recovered.clean());
+        assertEquals(List.of(snapshot(1L, "Adelaide", 1L)), recovered.snapshots());
+    }
+
+    @Test
+    void rejectsVersionGap() {
+        EntityJournal journal = createJournal();
+        journal.start(0L, List.of());
+        journal.appendUpsert(snapshot(1L, "Adelaide", 1L));
+        journal.appendUpsert(snapshot(2L, "Melbourne", 3L));
+        journal.destroy();
+
+        assertNull(createJournal().recover());
+    }
+
+    @Test
+    void recoversRestartedVersions() {
+        EntityJournal journal = createJournal();
+        journal.start(5000L, List.of(snapshot(1L, "Adelaide", 5000L)));
+        journal.destroy();
+
+        // eg: after the read model was reloaded from the repository, restarting its versions.
+        journal = createJournal();
+        journal.start(10L, List.of(snapshot(2L, "Melbourne", 10L)));
+        journal.appendUpsert(snapshot(3L, "Sydney", 11L));
+        journal.destroy();
+
+        EntityJournal.Recovered recovered = createJournal().recover();
+        assertNotNull(recovered);
+        assertEquals(11L, recovered.version());
+        assertEquals(Set.of(snapshot(2L, "Melbourne", 10L), snapshot(3L, "Sydney", 11L)),
+                Set.copyOf(recovered.snapshots()));
+    }
+
+    @Test
+    void recoversAfterBackgroundSnapshot() {
+        EntityJournal journal = createJournal();
+        journal.start(0L, List.of());
+        journal.appendUpsert(snapshot(1L, "Adelaide", 1L));
+        journal.rotate(1L);
+        // appended while the snapshot is being written.
+        journal.appendUpsert(snapshot(2L, "Melbourne", 2L));
+        journal.snapshot(1L, List.of(snapshot(1L, "Adelaide", 1L)));
+        journal.appendRemove(1L, 3L);
+        journal.destroy();
+
+        assertFalse(Files.exists(journalFile(1L)));
+        EntityJournal.Recovered recovered = createJournal().recover();
+        assertNotNull(recovered);
+        assertEquals(3L, recovered.version());
+        assertTrue(recovered.clean());
+        assertEquals(List.of(snapshot(2L, "Melbourne", 2L)), recovered.snapshots());
+    }
+
+    @Test
+    void recoversRotatedJournalsWithoutSnapshot() {
+        EntityJournal journal = createJournal();
+        journal.start(0L, List.of());
+        journal.appendUpsert(snapshot(1L, "Adelaide", 1L));
+        journal.rotate(1L);
+        journal.appendUpsert(snapshot(2L, "Melbourne", 2L));
+
+        // the process crashed before the snapshot was written, so both journals are replayed.
+        EntityJournal.Recovered recovered = createJournal().recover();
+        journal.destroy();
+
+        assertNotNull(recovered);
+        assertEquals(2L, recovered.version());
+        assertFalse(recovered.clean());
+        assertEquals(Set.of(snapshot(1L, "Adelaide", 1L), snapshot(2L, "Melbourne", 2L)),
+                Set.copyOf(recovered.snapshots()));
+    }
+
+    @Test
+    void discardsJournalWhenSnapshotFails() throws IOException {
+        EntityJournal journal = createJournal();
+        journal.start(0L, List.of());
+        journal.appendUpsert(snapshot(1L, "Adelaide", 1L));
+        journal.destroy();
+
+        // a directory where the snapshot's temporary file should be written, so writing the snapshot fails.
+        Files.createDirectory(directory.resolve("snapshot-tmp.bin"));
+        journal = createJournal();
+        journal.start(1L, List.of(snapshot(1L, "Adelaide", 1L)));
+        journal.appendUpsert(snapshot(2L, "Melbourne", 2L));
+        journal.destroy();
+
+        assertNull(createJournal().recover());
+    }
+
+    private EntityJournal createJournal() {
+        return new EntityJournal(directory.toString(), DataSize.ofKilobytes(4), 10_000);
+    }
+
+    private Path journalFile(long version) {
+        return directory.resolve(String.format("journal-%020d.bin", version));
+    }
+
+    // each record starts with its length, excluding the length itself and the checksum which follows it.
+    private static long secondRecordOffset(FileChannel file) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        file.read(length, 0L);
+        return 2 * Integer.BYTES + length.getInt(0);
+    }
+
+    private static EntitySnapshot snapshot(long id, String name, long version) {
+        return new EntitySnapshot(id, name, -34.92702910954714, 138.59959423542026, "A city", version);
+    }
+}
@@ -0,0 +1,111 @@
+package io.github.trquinn76.entitydemo.entity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class EntityReadModelTest {
+
+    private final EntityReadModel readModel = new EntityReadModel(new SimpleMeterRegistry());
+
+    @Test
+    void publishesNewVersions() {
+        EntitySnapshot adelaide = readModel.publish(entity(1L, "Adelaide"));
+        assertEquals(1L, adelaide.version());
+        assertEquals(1L, readModel.getVersion());
+        assertSame(adelaide, readModel.get(1L));
+
+        EntitySnapshot renamed = readModel.publish(entity(1L, "Adelaide CBD"));
+        assertEquals(2L, renamed.version());
+        assertEquals(2L, readModel.getVersion());
+        assertSame(renamed, readModel.get(1L));
+        assertEquals(1, readModel.size());
+        // the earlier snapshot is left as it was, for any session still holding it.
+        assertEquals("Adelaide", adelaide.name());
+    }
+
+    @Test
+    void removesOnlyExistingSnapshots() {
+        readModel.publish(entity(1L, "Adelaide"));
+
+        assertTrue(readModel.remove(1L));
+        assertEquals(2L, readModel.getVersion());
+        assertNull(readModel.get(1L));
+
+        assertFalse(readModel.remove(1L));
+        assertEquals(2L, readModel.getVersion());
+    }
+
+    @Test
+    void internsMatchingEntities() {
+        EntitySnapshot published = readModel.publish(entity(1L, "Adelaide"));
+
+        // eg: the same Entity loaded again by a query.
+        assertSame(published, readModel.intern(entity(1L, "Adelaide")));
+
+        EntitySnapshot stale = readModel.intern(entity(1L, "Old Adelaide"));
+        assertNotSame(published, stale);
+        assertEquals("Old Adelaide", stale.name());
+        assertEquals(0L, stale.version());
+        assertSame(published, readModel.get(1L));
+
+        assertEquals(0L, readModel.intern(entity(2L, "Melbourne")).version());
+        assertEquals(1L, readModel.getVersion());
+    }
+
+    @Test
+    void cachesSortedSnapshotsForEachVersion() {
+        EntitySnapshot melbourne = readModel.publish(entity(2L, "Melbourne"));
+        EntitySnapshot adelaide = readModel.publish(entity(1L, "Adelaide"));
+
+        List<EntitySnapshot> all = readModel.getAll();
+        assertEquals(List.of(adelaide, melbourne), all);
+        assertSame(all, readModel.getAll());
+        assertThrows(UnsupportedOperationException.class, () -> all.add(adelaide));
+
+        EntitySnapshot sydney = readModel.publish(entity(3L, "Sydney"));
+        assertEquals(List.of(adelaide, melbourne, sydney), readModel.getAll());
+        // the list already returned is not changed.
+        assertEquals(2, all.size());
+    }
+
+    @Test
+    void loadsOnlyChangedEntities() {
+        EntitySnapshot adelaide = readModel.publish(entity(1L, "Adelaide"));
+        readModel.publish(entity(2L, "Melbourne"));
+
+        readModel.load(List.of(entity(1L, "Adelaide"), entity(2L, "Melbourne CBD"), entity(3L, "Sydney")));
+        assertEquals(4L, readModel.getVersion());
+        assertSame(adelaide, readModel.get(1L));
+        assertEquals("Melbourne CBD", readModel.get(2L).name());
+        assertEquals(4L, readModel.get(3L).version());
+    }
+
+    @Test
+    void restoresWholeModel() {
+        readModel.publish(entity(1L, "Adelaide"));
+        EntitySnapshot melbourne = new EntitySnapshot(2L, "Melbourne", -37.8, 144.9, null, 40L);
+
+        readModel.restore(42L, List.of(melbourne));
+        assertEquals(42L, readModel.getVersion());
+        assertNull(readModel.get(1L));
+        assertSame(melbourne, readModel.get(2L));
+        assertEquals(List.of(melbourne), readModel.getAll());
+    }
+
+    private static Entity entity(long id, String name) {
+        Entity entity = EntitySnapshot.draft(name, -34.9, 138.6).toEntity();
+        entity.setId(id);
+        return entity;
+    }
+}
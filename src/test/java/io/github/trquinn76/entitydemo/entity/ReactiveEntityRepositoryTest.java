@@ -0,0 +1,128 @@
+package io.github.trquinn76.entitydemo.entity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import io.r2dbc.spi.ConnectionFactories;
+
+/**
+ * Streams {@link Entity}'s from an in-memory h2 DB, which r2dbc-h2 and h2 share by name within the JVM.
+ */
+class ReactiveEntityRepositoryTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private String url;
+    private ReactiveEntityRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        url = "r2dbc:h2:mem:///" + UUID.randomUUID() + "?options=DB_CLOSE_DELAY=-1";
+        DatabaseClient client = DatabaseClient.create(ConnectionFactories.get(url));
+        client.sql("CREATE TABLE entity (task_id BIGINT PRIMARY KEY, name VARCHAR(255) NOT NULL, "
+                + "latitude DOUBLE PRECISION NOT NULL, longitude DOUBLE PRECISION NOT NULL, description VARCHAR(255))")
+                .then().block(TIMEOUT);
+        insert(client, 1L, "Adelaide", -34.9, 138.6, "Capital of South Australia");
+        insert(client, 2L, "Perth", -31.9, 115.8, null);
+        insert(client, 3L, "Fiji", -17.7, 178.0, "West of the antimeridian");
+        insert(client, 4L, "Samoa", -13.8, -172.1, "East of the antimeridian");
+        insert(client, 5L, "London", 51.5, -0.1, "Well away from it");
+
+        repository = new ReactiveEntityRepository(url, "sa", "", 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.destroy();
+    }
+
+    @Test
+    void streamsRowsInBounds() {
+        List<Entity> found = repository.findByBounds(-30.0, 110.0, -40.0, 140.0).collectList().block(TIMEOUT);
+
+        assertEquals(List.of(1L, 2L), found.stream().map(Entity::getId).sorted().toList());
+        Entity adelaide = found.stream().filter(entity -> entity.getId() == 1L).findFirst().orElseThrow();
+        assertEquals("Adelaide", adelaide.getName());
+        assertEquals(-34.9, adelaide.getLatitudeDegrees());
+        assertEquals(138.6, adelaide.getLongitudeDegrees());
+        assertEquals("Capital of South Australia", adelaide.getDescription());
+    }
+
+    @Test
+    void streamsNothingOutsideBounds() {
+        assertTrue(repository.findByBounds(80.0, 10.0, 60.0, 20.0).collectList().block(TIMEOUT).isEmpty());
+    }
+
+    @Test
+    void streamsBothHalvesAcrossAntimeridian() {
+        JpaEntityStore store = new JpaEntityStore(mock(EntityRepository.class), provider(repository));
+        List<Entity> found = store.streamByBounds(new Viewport(0.0, -20.0, 170.0, -170.0)).collectList()
+                .block(TIMEOUT);
+
+        // the western half is queried first.
+        assertEquals(List.of(3L, 4L), found.stream().map(Entity::getId).toList());
+    }
+
+    @Test
+    void fallsBackToJpaWithoutReactiveRepository() {
+        EntityRepository jpaRepository = mock(EntityRepository.class);
+        Entity fiji = new Entity();
+        fiji.setId(3L);
+        Entity samoa = new Entity();
+        samoa.setId(4L);
+        when(jpaRepository.findByBounds(0.0, 170.0, -20.0, 180.0)).thenReturn(List.of(fiji));
+        when(jpaRepository.findByBounds(0.0, -180.0, -20.0, -170.0)).thenReturn(List.of(samoa));
+
+        JpaEntityStore store = new JpaEntityStore(jpaRepository, provider(null));
+        List<Entity> found = store.streamByBounds(new Viewport(0.0, -20.0, 170.0, -170.0)).collectList()
+                .block(TIMEOUT);
+
+        assertEquals(List.of(fiji, samoa), found);
+        verify(jpaRepository).findByBounds(0.0, 170.0, -20.0, 180.0);
+        verify(jpaRepository).findByBounds(0.0, -180.0, -20.0, -170.0);
+    }
+
+    @Test
+    void isOnlyCreatedWithUrl() {
+        ApplicationContextRunner runner = new ApplicationContextRunner()
+                .withUserConfiguration(ReactiveEntityRepository.class);
+
+        runner.run(context -> assertFalse(context.containsBean("reactiveEntityRepository")));
+        runner.withPropertyValues("entitydemo.r2dbc.url= ")
+                .run(context -> assertFalse(context.containsBean("reactiveEntityRepository")));
+        runner.withPropertyValues("entitydemo.r2dbc.url=" + url, "entitydemo.r2dbc.username=sa")
+                .run(context -> assertEquals(1, context.getBeansOfType(ReactiveEntityRepository.class).size()));
+    }
+
+    private static void insert(DatabaseClient client, long id, String name, double latitude, double longitude,
+            String description) {
+        DatabaseClient.GenericExecuteSpec spec = client.sql("INSERT INTO entity "
+                + "(task_id, name, latitude, longitude, description) VALUES (:id, :name, :latitude, :longitude, "
+                + ":description)").bind("id", id).bind("name", name).bind("latitude", latitude)
+                .bind("longitude", longitude);
+        spec = description == null ? spec.bindNull("description", String.class) : spec.bind("description", description);
+        spec.then().block(TIMEOUT);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ObjectProvider<ReactiveEntityRepository> provider(ReactiveEntityRepository repository) {
+        ObjectProvider<ReactiveEntityRepository> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(repository);
+        return provider;
+    }
+}
@@ -0,0 +1,130 @@
+package io.github.trquinn76.entitydemo.entity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the time taken by bounds queries against a single shard, and against the same {@link Entity}'s split across
+ * more shards, using in-memory h2 DB's.
+ *
+ * All the shards run in this JVM, so this measures how well the queries of the shards run in parallel on the cores
+ * available, rather than the capacity gained by putting shards on separate hosts. The world-wide query must scale
+ * near-linearly, being at least {@code entitydemo.benchmark.min-efficiency} (0.8 by default) times as fast as linear
+ * scaling across the shards, up to the number of cores, would be.
+ *
+ * This is not run with the other tests. Run it with {@code -Dentitydemo.benchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "entitydemo.benchmark", matches = "true")
+class ShardedEntityStoreBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedEntityStoreBenchmark.class);
+
+    private static final String INSERT = "INSERT INTO entity (task_id, name, latitude, longitude, description) "
+            + "VALUES (?, ?, ?, ?, ?)";
+
+    private static final int ENTITY_COUNT = 200_000;
+    private static final int[] SHARD_COUNTS = { 1, 2, 4, 8 };
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int ITERATIONS = 20;
+
+    private static final Viewport WORLD = new Viewport(90.0, -90.0, -180.0, 180.0);
+    private static final Viewport ANTIMERIDIAN = new Viewport(30.0, -30.0, 150.0, -150.0);
+
+    @Test
+    void benchmarkFindByBounds() {
+        double minEfficiency = Double.parseDouble(System.getProperty("entitydemo.benchmark.min-efficiency", "0.8"));
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Entity> entities = createEntities();
+        int inAntimeridian = 0;
+        for (Entity entity : entities) {
+            if (ANTIMERIDIAN.contains(entity.getLatitudeDegrees(), entity.getLongitudeDegrees())) {
+                inAntimeridian++;
+            }
+        }
+
+        double worldBaseline = 0.0;
+        double antimeridianBaseline = 0.0;
+        for (int shardCount : SHARD_COUNTS) {
+            ShardedEntityStore store = createStore(shardCount);
+            try {
+                load(store, entities);
+                assertEquals(ENTITY_COUNT, store.count());
+
+                double world = time(() -> store.findByBounds(WORLD), ENTITY_COUNT);
+                double antimeridian = time(() -> store.findByBounds(ANTIMERIDIAN), inAntimeridian);
+                if (shardCount == 1) {
+                    worldBaseline = world;
+                    antimeridianBaseline = antimeridian;
+                }
+                double worldSpeedup = worldBaseline / world;
+                double antimeridianSpeedup = antimeridianBaseline / antimeridian;
+                log.info(String.format("%d shard(s) on %d cores: world %.1f ms (x%.2f), antimeridian %.1f ms (x%.2f)",
+                        shardCount, cores, world, worldSpeedup, antimeridian, antimeridianSpeedup));
+
+                double required = minEfficiency * Math.min(shardCount, cores);
+                assertTrue(worldSpeedup >= required, String.format(
+                        "%d shards were only x%.2f faster than 1 shard, expected at least x%.2f", shardCount,
+                        worldSpeedup, required));
+            } finally {
+                store.destroy();
+            }
+        }
+    }
+
+    // returns the mean time in milliseconds, after checking each query returns the expected number of entities.
+    private static double time(Supplier<List<Entity>> query, int expected) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            assertEquals(expected, query.get().size());
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertEquals(expected, query.get().size());
+        }
+        return (double) (System.nanoTime() - start) / TimeUnit.MILLISECONDS.toNanos(1) / ITERATIONS;
+    }
+
+    private static ShardedEntityStore createStore(int shardCount) {
+        String[] urls = new String[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            urls[i] = "jdbc:h2:mem:benchmark" + shardCount + "-" + i + ";DB_CLOSE_DELAY=-1";
+        }
+        return new ShardedEntityStore(urls, "sa", "");
+    }
+
+    // inserts the entities straight into the shard which owns them, in a batch per shard, as saving each one through
+    // the store would take far longer than the queries being measured.
+    private static void load(ShardedEntityStore store, List<Entity> entities) {
+        Map<ShardedEntityStore.Shard, List<Object[]>> batches = new HashMap<>();
+        long id = 1L;
+        for (Entity entity : entities) {
+            batches.computeIfAbsent(store.shardFor(entity.getLongitudeDegrees()), shard -> new ArrayList<>())
+                    .add(new Object[] { id++, entity.getName(), entity.getLatitudeDegrees(),
+                            entity.getLongitudeDegrees(), entity.getDescription() });
+        }
+        batches.forEach((shard, batch) -> shard.jdbc().batchUpdate(INSERT, batch));
+    }
+
+    // a fixed seed, so every run queries the same entities.
+    private static List<Entity> createEntities() {
+        Random random = new Random(42L);
+        List<Entity> entities = new ArrayList<>(ENTITY_COUNT);
+        for (int i = 0; i < ENTITY_COUNT; i++) {
+            entities.add(EntitySnapshot.draft("Entity " + i, random.nextDouble(-90.0, 90.0),
+                    random.nextDouble(-180.0, 180.0)).toEntity());
+        }
+        return entities;
+    }
+}
@@ -0,0 +1,107 @@
+package io.github.trquinn76.entitydemo.entity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+
+class ShardedEntityStoreTest {
+
+    private ShardedEntityStore store;
+
+    @AfterEach
+    void tearDown() {
+        if (store != null) {
+            store.destroy();
+        }
+    }
+
+    @Test
+    void storesEntityInShardOwningItsLongitude() {
+        store = createStore(2);
+        Entity entity = store.save(entity(10.0));
+
+        assertEquals(1L, entity.getId());
+        assertEquals(0L, countIn(0));
+        assertEquals(1L, countIn(1));
+    }
+
+    @Test
+    void movesEntityBetweenShards() {
+        store = createStore(2);
+        Entity entity = store.save(entity(10.0));
+        entity.setLongitudeDegrees(-10.0);
+        store.save(entity);
+
+        assertEquals(1L, countIn(0));
+        assertEquals(0L, countIn(1));
+        assertEquals(List.of(-10.0), store.findAll().stream().map(Entity::getLongitudeDegrees).toList());
+    }
+
+    @Test
+    void keepsEntityInOldShardWhenMoveFails() {
+        store = createStore(2);
+        Entity entity = store.save(entity(10.0));
+        store.shardFor(-10.0).jdbc().execute("DROP TABLE entity");
+        entity.setLongitudeDegrees(-10.0);
+
+        assertThrows(DataAccessException.class, () -> store.save(entity));
+        assertEquals(1L, countIn(1));
+    }
+
+    @Test
+    void findsEntitiesOnBandEdges() {
+        // 7 bands do not divide 360 degrees exactly, so the edges are subject to rounding.
+        store = createStore(7);
+        for (int i = 1; i < 7; i++) {
+            double edge = -180.0 + i * 360.0 / 7;
+            for (double longitude : new double[] { Math.nextDown(edge), edge, Math.nextUp(edge) }) {
+                Entity saved = store.save(entity(longitude));
+                Viewport viewport = new Viewport(1.0, -1.0, longitude, longitude);
+
+                assertTrue(store.findByBounds(viewport).stream().anyMatch(found -> found.getId().equals(saved.getId())),
+                        "not found at " + longitude);
+            }
+        }
+    }
+
+    @Test
+    void queriesShardsAtEitherEndAcrossAntimeridian() {
+        store = createStore(3);
+        store.save(entity(179.0));
+        store.save(entity(0.0));
+        store.save(entity(-179.0));
+        Viewport viewport = new Viewport(1.0, -1.0, 170.0, -170.0);
+
+        assertEquals(List.of(2, 0), store.plan(viewport).stream().map(query -> query.shard().index()).toList());
+        assertEquals(List.of(179.0, -179.0),
+                store.findByBounds(viewport).stream().map(Entity::getLongitudeDegrees).toList());
+    }
+
+    private static ShardedEntityStore createStore(int shardCount) {
+        String[] urls = new String[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            urls[i] = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        }
+        return new ShardedEntityStore(urls, "sa", "");
+    }
+
+    private static Entity entity(double longitudeDegrees) {
+        Entity entity = new Entity();
+        entity.setName("Entity");
+        entity.setLatitudeDegrees(0.0);
+        entity.setLongitudeDegrees(longitudeDegrees);
+        return entity;
+    }
+
+    private long countIn(int shardIndex) {
+        ShardedEntityStore.Shard shard = store.shardFor(-180.0 + (shardIndex + 0.5) * 360.0 / store.getShardCount());
+        return shard.jdbc().queryForObject("SELECT COUNT(*) FROM entity", Long.class);
+    }
+}
@@ -0,0 +1,154 @@
+package io.github.trquinn76.entitydemo.entity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+
+class ViewportPrefetcherTest {
+
+    private static final Duration IDLE_TIMEOUT = Duration.ofSeconds(2);
+
+    private final EntityService entityService = mock(EntityService.class);
+    private final Scheduler idleScheduler = mock(Scheduler.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private EntityReadModel readModel;
+    private ViewportPrefetcher prefetcher;
+
+    private EntitySnapshot west;
+    private EntitySnapshot east;
+    private EntitySnapshot outside;
+
+    @BeforeEach
+    void setUp() {
+        readModel = new EntityReadModel(meterRegistry);
+        prefetcher = new ViewportPrefetcherFactory(entityService, readModel, true, 4, 5000, Duration.ofSeconds(1),
+                IDLE_TIMEOUT, meterRegistry, idleScheduler).create();
+        when(idleScheduler.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class)))
+                .thenReturn(Disposables.single());
+
+        // either side of the antimeridian, and well away from it.
+        west = publish(1L, 0.0, 175.0);
+        east = publish(2L, 0.0, -179.0);
+        outside = publish(3L, 0.0, 150.0);
+
+        // the results are emitted as soon as they are subscribed to, so prefetches complete immediately.
+        when(entityService.streamEntities(any(Viewport.class))).thenAnswer(invocation -> {
+            Viewport viewport = invocation.getArgument(0);
+            return Flux.fromIterable(readModel.getAll())
+                    .filter(snapshot -> viewport.contains(snapshot.latitudeDegrees(), snapshot.longitudeDegrees()));
+        });
+    }
+
+    @Test
+    void servesPredictedViewportAcrossAntimeridian() {
+        // a pan east of 10 degrees over a second, so the next viewport is expected to cross the antimeridian.
+        prefetcher.prefetch(new Viewport(10.0, -10.0, 160.0, 170.0), new PanMotion(0.0, 10.0, 1000L), () -> true);
+
+        List<EntitySnapshot> taken = prefetcher.take(new Viewport(5.0, -5.0, 172.0, -178.0));
+        assertEquals(Set.of(west, east), Set.copyOf(taken));
+    }
+
+    @Test
+    void missesViewportOutsidePrediction() {
+        prefetcher.prefetch(new Viewport(10.0, -10.0, 160.0, 170.0), new PanMotion(0.0, 10.0, 1000L), () -> true);
+
+        assertNull(prefetcher.take(new Viewport(10.0, -10.0, 100.0, 120.0)));
+    }
+
+    @Test
+    void servesZoomedOutViewport() {
+        prefetcher.prefetch(new Viewport(10.0, -10.0, 140.0, 160.0), new PanMotion(0.0, 1.0, 1000L), () -> true);
+
+        // within the viewport zoomed out one level, to the west of the current one.
+        List<EntitySnapshot> taken = prefetcher.take(new Viewport(10.0, -10.0, 130.0, 155.0));
+        assertEquals(List.of(outside), taken);
+    }
+
+    @Test
+    void discardsResultsOnceReadModelChanges() {
+        prefetcher.prefetch(new Viewport(10.0, -10.0, 160.0, 170.0), new PanMotion(0.0, 10.0, 1000L), () -> true);
+        publish(4L, 0.0, 176.0);
+
+        assertNull(prefetcher.take(new Viewport(5.0, -5.0, 172.0, -178.0)));
+    }
+
+    @Test
+    void doesNotPrefetchWhenStopped() {
+        prefetcher.prefetch(new Viewport(10.0, -10.0, 160.0, 170.0), new PanMotion(0.0, 0.0, 1000L), () -> true);
+
+        verify(entityService, never()).streamEntities(any(Viewport.class));
+        verify(idleScheduler, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        assertNull(prefetcher.take(new Viewport(5.0, -5.0, 162.0, 168.0)));
+    }
+
+    @Test
+    void cancelsPrefetchesWhenIdle() {
+        when(entityService.streamEntities(any(Viewport.class))).thenReturn(Flux.never());
+        prefetcher.prefetch(new Viewport(10.0, -10.0, 160.0, 170.0), new PanMotion(0.0, 10.0, 1000L), () -> true);
+        assertEquals(0.0, cancelled());
+
+        idleTimeouts(1).get(0).run();
+        assertEquals(2.0, cancelled());
+    }
+
+    @Test
+    void keepsPrefetchesOfLaterMoveWhenIdleTimeoutPasses() {
+        when(entityService.streamEntities(any(Viewport.class))).thenReturn(Flux.never());
+        prefetcher.prefetch(new Viewport(10.0, -10.0, 160.0, 170.0), new PanMotion(0.0, 10.0, 1000L), () -> true);
+        prefetcher.prefetch(new Viewport(10.0, -10.0, 170.0, 180.0), new PanMotion(0.0, 10.0, 1000L), () -> true);
+        // the prefetches of the first move were cancelled by the second.
+        assertEquals(2.0, cancelled());
+
+        List<Runnable> idleTimeouts = idleTimeouts(2);
+        idleTimeouts.get(0).run();
+        assertEquals(2.0, cancelled());
+        idleTimeouts.get(1).run();
+        assertEquals(4.0, cancelled());
+    }
+
+    @Test
+    void doesNotPrefetchWhenNotAdmitted() {
+        prefetcher.prefetch(new Viewport(10.0, -10.0, 160.0, 170.0), new PanMotion(0.0, 10.0, 1000L), () -> false);
+
+        verify(entityService, never()).streamEntities(any(Viewport.class));
+        assertNull(prefetcher.take(new Viewport(5.0, -5.0, 172.0, -178.0)));
+    }
+
+    private double cancelled() {
+        return meterRegistry.counter("entitydemo.prefetch.cancelled").count();
+    }
+
+    private List<Runnable> idleTimeouts(int expected) {
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(idleScheduler, times(expected)).schedule(captor.capture(), eq(IDLE_TIMEOUT.toNanos()),
+                eq(TimeUnit.NANOSECONDS));
+        return captor.getAllValues();
+    }
+
+    private EntitySnapshot publish(long id, double latitude, double longitude) {
+        Entity entity = EntitySnapshot.draft("Entity " + id, latitude, longitude).toEntity();
+        entity.setId(id);
+        return readModel.publish(entity);
+    }
+}
@@ -0,0 +1,136 @@
+package io.github.trquinn76.entitydemo.entity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ViewportTest {
+
+    private static final double DELTA = 1e-9;
+
+    private static final Viewport WORLD = new Viewport(90.0, -90.0, -180.0, 180.0);
+    // 20 degrees wide, centred on the antimeridian.
+    private static final Viewport ACROSS_ANTIMERIDIAN = new Viewport(10.0, -10.0, 170.0, -170.0);
+
+    @Test
+    void measuresBoundsAcrossAntimeridian() {
+        assertTrue(ACROSS_ANTIMERIDIAN.crossesAntimeridian());
+        assertEquals(20.0, ACROSS_ANTIMERIDIAN.longitudeSpan(), DELTA);
+        assertFalse(WORLD.crossesAntimeridian());
+        assertEquals(360.0, WORLD.longitudeSpan(), DELTA);
+    }
+
+    @Test
+    void containsLocationsAcrossAntimeridian() {
+        assertTrue(ACROSS_ANTIMERIDIAN.contains(0.0, 175.0));
+        assertTrue(ACROSS_ANTIMERIDIAN.contains(0.0, -175.0));
+        assertTrue(ACROSS_ANTIMERIDIAN.contains(0.0, 180.0));
+        assertTrue(ACROSS_ANTIMERIDIAN.contains(0.0, -180.0));
+        assertTrue(ACROSS_ANTIMERIDIAN.contains(10.0, -170.0));
+        assertFalse(ACROSS_ANTIMERIDIAN.contains(0.0, 0.0));
+        assertFalse(ACROSS_ANTIMERIDIAN.contains(0.0, 169.0));
+        assertFalse(ACROSS_ANTIMERIDIAN.contains(0.0, -169.0));
+        assertFalse(ACROSS_ANTIMERIDIAN.contains(11.0, 180.0));
+    }
+
+    @Test
+    void containsViewportsAcrossAntimeridian() {
+        assertTrue(ACROSS_ANTIMERIDIAN.contains(new Viewport(5.0, -5.0, 175.0, -175.0)));
+        assertTrue(ACROSS_ANTIMERIDIAN.contains(new Viewport(5.0, -5.0, 171.0, 179.0)));
+        assertTrue(ACROSS_ANTIMERIDIAN.contains(new Viewport(5.0, -5.0, -179.0, -171.0)));
+        assertTrue(ACROSS_ANTIMERIDIAN.contains(ACROSS_ANTIMERIDIAN));
+        // overlapping, but extending past one side or the other.
+        assertFalse(ACROSS_ANTIMERIDIAN.contains(new Viewport(5.0, -5.0, 165.0, 175.0)));
+        assertFalse(ACROSS_ANTIMERIDIAN.contains(new Viewport(5.0, -5.0, -175.0, -165.0)));
+        assertFalse(ACROSS_ANTIMERIDIAN.contains(new Viewport(15.0, -5.0, 175.0, -175.0)));
+        // within the longitudes of the bounds, but the long way round.
+        assertFalse(ACROSS_ANTIMERIDIAN.contains(new Viewport(5.0, -5.0, -175.0, 175.0)));
+        // not crossing the antimeridian, and so the complement of the bounds.
+        assertFalse(new Viewport(10.0, -10.0, -170.0, 170.0).contains(new Viewport(5.0, -5.0, 175.0, -175.0)));
+    }
+
+    @Test
+    void worldContainsEverything() {
+        assertTrue(WORLD.contains(90.0, 180.0));
+        assertTrue(WORLD.contains(-90.0, -180.0));
+        assertTrue(WORLD.contains(ACROSS_ANTIMERIDIAN));
+        assertTrue(WORLD.contains(new Viewport(10.0, -10.0, -170.0, 170.0)));
+        assertTrue(WORLD.contains(WORLD));
+        assertFalse(ACROSS_ANTIMERIDIAN.contains(WORLD));
+    }
+
+    @Test
+    void translatesAcrossAntimeridian() {
+        Viewport translated = new Viewport(10.0, -10.0, 160.0, 170.0).translate(0.0, 15.0);
+        assertViewport(10.0, -10.0, 175.0, -175.0, translated);
+        assertTrue(translated.crossesAntimeridian());
+
+        translated = ACROSS_ANTIMERIDIAN.translate(0.0, 20.0);
+        assertViewport(10.0, -10.0, -170.0, -150.0, translated);
+        assertFalse(translated.crossesAntimeridian());
+
+        assertViewport(10.0, -10.0, 150.0, 170.0, ACROSS_ANTIMERIDIAN.translate(0.0, -20.0));
+    }
+
+    @Test
+    void translationOfWorldOnlyMovesLatitude() {
+        assertViewport(90.0, -90.0, -180.0, 180.0, WORLD.translate(0.0, 45.0));
+        assertViewport(90.0, -90.0, -180.0, 180.0, WORLD.translate(30.0, 0.0));
+    }
+
+    @Test
+    void translationStopsAtPoles() {
+        Viewport north = new Viewport(80.0, 60.0, 0.0, 10.0).translate(30.0, 0.0);
+        assertViewport(90.0, 70.0, 0.0, 10.0, north);
+
+        Viewport south = new Viewport(-60.0, -80.0, 0.0, 10.0).translate(-30.0, 0.0);
+        assertViewport(-70.0, -90.0, 0.0, 10.0, south);
+
+        // moving further than the height of the bounds must not leave the southern bound north of the northern one.
+        Viewport beyond = new Viewport(85.0, 80.0, 0.0, 10.0).translate(40.0, 0.0);
+        assertViewport(90.0, 85.0, 0.0, 10.0, beyond);
+    }
+
+    @Test
+    void scalesAcrossAntimeridian() {
+        Viewport scaled = ACROSS_ANTIMERIDIAN.scale(2.0);
+        assertViewport(20.0, -20.0, 160.0, -160.0, scaled);
+        assertTrue(scaled.contains(ACROSS_ANTIMERIDIAN));
+
+        scaled = new Viewport(10.0, -10.0, 160.0, 170.0).scale(4.0);
+        assertViewport(40.0, -40.0, 145.0, -175.0, scaled);
+        assertTrue(scaled.crossesAntimeridian());
+    }
+
+    @Test
+    void scalingPastWorldCoversAllLongitudes() {
+        assertViewport(40.0, -40.0, -180.0, 180.0, new Viewport(20.0, -20.0, -100.0, 100.0).scale(2.0));
+        assertViewport(40.0, -40.0, -180.0, 180.0, new Viewport(20.0, -20.0, 100.0, -80.0).scale(2.0));
+        assertViewport(90.0, -90.0, -180.0, 180.0, WORLD.scale(2.0));
+        assertTrue(WORLD.scale(2.0).contains(WORLD));
+    }
+
+    @Test
+    void scalingClampsToPoles() {
+        assertViewport(90.0, 50.0, 0.0, 20.0, new Viewport(80.0, 60.0, 5.0, 15.0).scale(2.0));
+        assertViewport(-50.0, -90.0, 0.0, 20.0, new Viewport(-60.0, -80.0, 5.0, 15.0).scale(2.0));
+    }
+
+    @Test
+    void normalisesLongitudes() {
+        assertEquals(-170.0, Viewport.normaliseLongitude(190.0), DELTA);
+        assertEquals(170.0, Viewport.normaliseLongitude(-190.0), DELTA);
+        assertEquals(10.0, Viewport.normaliseLongitude(730.0), DELTA);
+        assertEquals(180.0, Viewport.normaliseLongitude(180.0), DELTA);
+        assertEquals(-180.0, Viewport.normaliseLongitude(-180.0), DELTA);
+    }
+
+    private static void assertViewport(double north, double south, double west, double east, Viewport actual) {
+        assertEquals(north, actual.northLat(), DELTA, "north of " + actual);
+        assertEquals(south, actual.southLat(), DELTA, "south of " + actual);
+        assertEquals(west, actual.westLon(), DELTA, "west of " + actual);
+        assertEquals(east, actual.eastLon(), DELTA, "east of " + actual);
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.trquinn76.entitydemo.view;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
+import com.vaadin.flow.server.Command;
+import com.vaadin.flow.server.VaadinSession;
+
+/**
+ * Runs the updates immediately, as if the UI was always available, until it is detached. Counts the calls to
+ * {@link #access(Command)}.
+ */
+final class AccessUi extends UI {
+
+    private final VaadinSession session;
+    private int accesses = 0;
+    private boolean detached = false;
+
+    AccessUi(VaadinSession session) {
+        this.session = session;
+    }
+
+    @Override
+    public Future<Void> access(Command command) {
+        if (detached) {
+            throw new UIDetachedException();
+        }
+        accesses++;
+        command.execute();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public VaadinSession getSession() {
+        return session;
+    }
+
+    int getAccesses() {
+        return accesses;
+    }
+
+    void detach() {
+        detached = true;
+    }
+}
@@ -0,0 +1,253 @@
+package io.github.trquinn76.entitydemo.view;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+
+import com.vaadin.flow.server.Command;
+import com.vaadin.flow.server.VaadinSession;
+
+import io.github.trquinn76.entitydemo.view.AdmissionController.Endpoint;
+import io.github.trquinn76.entitydemo.view.AdmissionController.Result;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AdmissionControllerTest {
+
+    private static final Duration MAX_DELAY = Duration.ofSeconds(5);
+
+    private final AtomicLong clock = new AtomicLong(1_000_000L);
+    private final ManualScheduler scheduler = new ManualScheduler(clock);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // a move a second for the session, and a double click a second.
+    private final TokenBucket moveEndBucket = new TokenBucket(1.0, 1, clock::get);
+    private final TokenBucket mouseMoveBucket = new TokenBucket(10.0, 10, clock::get);
+    private final TokenBucket dblClickBucket = new TokenBucket(1.0, 1, clock::get);
+
+    private AccessUi ui;
+    private UiUpdateScheduler updateScheduler;
+    private AdmissionControllerFactory factory;
+    private AdmissionController controller;
+
+    @Test
+    void runsQueryWhenAdmitted() {
+        createController(true, 1.0, 2);
+        Move move = new Move(false);
+        controller.admitMoveEnd(move.cached, move.query);
+
+        assertEquals(1, move.lookups);
+        assertEquals(1, move.queries);
+        assertEquals(1.0, count(Endpoint.MOVE_END, Result.ADMITTED));
+    }
+
+    @Test
+    void servesCachedMoveWithoutNodeToken() {
+        createController(true, 0.001, 1);
+        Move move = new Move(true);
+        controller.admitMoveEnd(move.cached, move.query);
+
+        assertEquals(1, move.lookups);
+        assertEquals(0, move.queries);
+        assertEquals(1.0, count(Endpoint.MOVE_END, Result.ADMITTED));
+        // the node's only token is still available.
+        assertTrue(factory.tryAcquireQuery());
+    }
+
+    @Test
+    void holdsMoveUntilSessionAdmitsIt() {
+        createController(true, 1.0, 2);
+        Move first = new Move(false);
+        Move second = new Move(false);
+        controller.admitMoveEnd(first.cached, first.query);
+        controller.admitMoveEnd(second.cached, second.query);
+
+        // the session's token is checked before the buffer, so the held move has not been looked up.
+        assertEquals(0, second.lookups);
+        assertEquals(0, second.queries);
+
+        scheduler.advance(Duration.ofMillis(1100));
+        assertEquals(1, second.lookups);
+        assertEquals(1, second.queries);
+        assertEquals(2.0, count(Endpoint.MOVE_END, Result.ADMITTED));
+        // the held move is run through the view's update scheduler.
+        assertEquals(1, ui.getAccesses());
+    }
+
+    @Test
+    void reportsFailedHeldMoveToErrorHandler() {
+        createController(true, 1.0, 2);
+        Move first = new Move(false);
+        controller.admitMoveEnd(first.cached, first.query);
+        controller.admitMoveEnd(() -> false, () -> {
+            throw new IllegalStateException("query failed");
+        });
+
+        scheduler.advance(Duration.ofMillis(1100));
+        AttributeSession session = (AttributeSession) ui.getSession();
+        assertEquals(1, session.getErrors().size());
+        assertEquals("query failed", session.getErrors().get(0).getMessage());
+    }
+
+    @Test
+    void coalescesHeldMoves() {
+        createController(true, 1.0, 2);
+        Move first = new Move(false);
+        Move second = new Move(false);
+        Move third = new Move(false);
+        controller.admitMoveEnd(first.cached, first.query);
+        controller.admitMoveEnd(second.cached, second.query);
+        controller.admitMoveEnd(third.cached, third.query);
+        assertEquals(1.0, count(Endpoint.MOVE_END, Result.COALESCED));
+
+        scheduler.advance(Duration.ofMillis(1100));
+        assertEquals(0, second.queries);
+        assertEquals(1, third.queries);
+        assertEquals(2.0, count(Endpoint.MOVE_END, Result.ADMITTED));
+    }
+
+    @Test
+    void releasesSessionTokenWhenNodeRefuses() {
+        createController(true, 0.001, 1);
+        factory.chargeQuery();
+        Move move = new Move(false);
+        controller.admitMoveEnd(move.cached, move.query);
+
+        assertEquals(0, move.queries);
+        assertEquals(1.0, moveEndBucket.fill(), 1e-6);
+    }
+
+    @Test
+    void looksUpBufferOncePerMove() {
+        createController(true, 1.0, 1);
+        factory.chargeQuery();
+        Move move = new Move(false);
+        controller.admitMoveEnd(move.cached, move.query);
+        assertEquals(1, move.lookups);
+        assertEquals(0, move.queries);
+
+        // takes the token the held move is waiting for, so its first retry fails.
+        scheduler.advance(Duration.ofMillis(500));
+        factory.chargeQuery();
+        scheduler.advance(Duration.ofMillis(600));
+        assertEquals(0, move.queries);
+
+        scheduler.advance(Duration.ofSeconds(1));
+        assertEquals(1, move.lookups);
+        assertEquals(1, move.queries);
+    }
+
+    @Test
+    void rejectsHeldMoveAfterMaxDelay() {
+        createController(true, 0.1, 1);
+        factory.chargeQuery();
+        Move move = new Move(false);
+        controller.admitMoveEnd(move.cached, move.query);
+
+        scheduler.advance(Duration.ofSeconds(30));
+        assertEquals(0, move.queries);
+        assertEquals(0.0, count(Endpoint.MOVE_END, Result.ADMITTED));
+        assertEquals(1.0, count(Endpoint.MOVE_END, Result.REJECTED));
+    }
+
+    @Test
+    void discardsHeldMoveOnClose() {
+        createController(true, 0.001, 1);
+        factory.chargeQuery();
+        Move move = new Move(false);
+        controller.admitMoveEnd(move.cached, move.query);
+        controller.close();
+
+        scheduler.advance(Duration.ofSeconds(30));
+        assertEquals(0, move.queries);
+        assertEquals(0.0, count(Endpoint.MOVE_END, Result.REJECTED));
+    }
+
+    @Test
+    void shedsSpeculativeCallsWhenOverloaded() {
+        createController(true, 0.001, 2);
+        assertTrue(controller.admitPrefetch());
+        assertTrue(controller.admitMouseMove());
+
+        // the node's capacity is now below the shed threshold.
+        assertTrue(factory.tryAcquireQuery());
+        assertFalse(controller.admitPrefetch());
+        assertFalse(controller.admitMouseMove());
+        assertTrue(controller.admitMapDblClicked());
+        assertEquals(1.0, count(Endpoint.PREFETCH, Result.REJECTED));
+        assertEquals(1.0, count(Endpoint.MOUSE_MOVE, Result.REJECTED));
+    }
+
+    @Test
+    void chargesEntityListEvenWhenOverloaded() {
+        createController(true, 0.001, 1);
+        controller.chargeEntityList();
+        controller.chargeEntityList();
+
+        assertTrue(factory.isOverloaded());
+        assertEquals(2.0, count(Endpoint.ENTITY_LIST, Result.ADMITTED));
+    }
+
+    @Test
+    void admitsEverythingWhenDisabled() {
+        createController(false, 0.001, 1);
+        factory.chargeQuery();
+        for (int i = 0; i < 5; i++) {
+            Move move = new Move(false);
+            controller.admitMoveEnd(move.cached, move.query);
+            assertEquals(1, move.lookups);
+            assertEquals(1, move.queries);
+            assertTrue(controller.admitPrefetch());
+            assertTrue(controller.admitMouseMove());
+            assertTrue(controller.admitMapDblClicked());
+        }
+    }
+
+    @Test
+    void sharesSessionBucketsBetweenUis() {
+        createController(true, 1.0, 2);
+        VaadinSession session = new AttributeSession();
+        AdmissionController first = factory.create(new AccessUi(session), updateScheduler);
+        AdmissionController second = factory.create(new AccessUi(session), updateScheduler);
+        AdmissionController otherSession = factory.create(new AccessUi(new AttributeSession()), updateScheduler);
+
+        assertTrue(first.admitMapDblClicked());
+        assertFalse(second.admitMapDblClicked());
+        assertTrue(otherSession.admitMapDblClicked());
+    }
+
+    private void createController(boolean enabled, double queryRate, int queryBurst) {
+        factory = new AdmissionControllerFactory(enabled, 1.0, 1, 10.0, 1.0, queryRate, queryBurst, 0.5, MAX_DELAY,
+                meterRegistry, clock::get, scheduler);
+        ui = new AccessUi(new AttributeSession());
+        updateScheduler = new UiUpdateSchedulerFactory(Duration.ZERO, meterRegistry, clock::get, scheduler).create(ui);
+        controller = new AdmissionController(updateScheduler, moveEndBucket, mouseMoveBucket, dblClickBucket,
+                MAX_DELAY.toNanos(), factory);
+    }
+
+    private double count(Endpoint endpoint, Result result) {
+        return meterRegistry.counter("entitydemo.admission.calls", "endpoint", endpoint.getTag(), "result",
+                result.getTag()).count();
+    }
+
+    // counts the lookups of the prefetch buffer, and the queries, for a move.
+    private static final class Move {
+
+        private int lookups = 0;
+        private int queries = 0;
+        private final BooleanSupplier cached;
+        private final Command query = () -> queries++;
+
+        Move(boolean hit) {
+            this.cached = () -> {
+                lookups++;
+                return hit;
+            };
+        }
+    }
+}
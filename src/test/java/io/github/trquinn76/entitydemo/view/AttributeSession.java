@@ -0,0 +1,41 @@
+package io.github.trquinn76.entitydemo.view;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.vaadin.flow.server.ErrorHandler;
+import com.vaadin.flow.server.VaadinSession;
+
+/**
+ * Holds the attributes without a VaadinService, or locking, and collects the errors passed to its error handler.
+ */
+final class AttributeSession extends VaadinSession {
+
+    private final Map<Class<?>, Object> attributes = new HashMap<>();
+    private final List<Throwable> errors = new ArrayList<>();
+
+    AttributeSession() {
+        super(null);
+    }
+
+    @Override
+    public <T> T getAttribute(Class<T> type) {
+        return type.cast(attributes.get(type));
+    }
+
+    @Override
+    public <T> void setAttribute(Class<T> type, T value) {
+        attributes.put(type, value);
+    }
+
+    @Override
+    public ErrorHandler getErrorHandler() {
+        return event -> errors.add(event.getThrowable());
+    }
+
+    List<Throwable> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.trquinn76.entitydemo.view;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.trquinn76.entitydemo.entity.Entity;
+import io.github.trquinn76.entitydemo.entity.EntitySnapshot;
+
+class EntityFormTest {
+
+    private final EntityForm form = new EntityForm("test");
+    private final EntitySnapshot adelaide = new EntitySnapshot(1L, "Adelaide", -34.9, 138.6,
+            "Capital of South Australia", 3L);
+
+    @Test
+    void writesEditsToCopy() {
+        form.setEntity(adelaide);
+        assertEquals("Adelaide", form.nameField.getValue());
+        form.nameField.setValue("Adelaide CBD");
+        form.latitudeDegreesField.setValue(-35.0);
+
+        Entity edited = form.getEntity();
+        assertNotNull(edited);
+        assertEquals(1L, edited.getId());
+        assertEquals("Adelaide CBD", edited.getName());
+        assertEquals(-35.0, edited.getLatitudeDegrees());
+        assertEquals(138.6, edited.getLongitudeDegrees());
+        assertEquals("Capital of South Australia", edited.getDescription());
+        // the shared snapshot is never modified.
+        assertEquals(new EntitySnapshot(1L, "Adelaide", -34.9, 138.6, "Capital of South Australia", 3L), adelaide);
+    }
+
+    @Test
+    void writesNewCopyEachTime() {
+        form.setEntity(adelaide);
+        Entity first = form.getEntity();
+        first.setName("Changed");
+
+        Entity second = form.getEntity();
+        assertNotSame(first, second);
+        assertEquals("Adelaide", second.getName());
+        assertEquals("Adelaide", form.nameField.getValue());
+    }
+
+    @Test
+    void writesNothingWithoutSnapshot() {
+        assertNull(form.getEntity());
+
+        form.setEntity(adelaide);
+        form.setEntity(null);
+        assertNull(form.getEntity());
+        assertEquals("", form.nameField.getValue());
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.trquinn76.entitydemo.view;
+
+import java.time.Duration;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Runs the scheduled tasks as the test advances the clock, including any they schedule in turn.
+ */
+final class ManualScheduler implements Scheduler {
+
+    private final AtomicLong clock;
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>();
+    private long sequence = 0L;
+
+    ManualScheduler(AtomicLong clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public Disposable schedule(Runnable task) {
+        return schedule(task, 0L, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Disposable schedule(Runnable task, long delay, TimeUnit unit) {
+        tasks.add(new Task(clock.get() + unit.toNanos(delay), sequence++, task));
+        return () -> {};
+    }
+
+    @Override
+    public Worker createWorker() {
+        throw new UnsupportedOperationException();
+    }
+
+    void advance(Duration duration) {
+        long end = clock.get() + duration.toNanos();
+        while (!tasks.isEmpty() && tasks.peek().due() <= end) {
+            Task task = tasks.poll();
+            clock.set(Math.max(clock.get(), task.due()));
+            task.task().run();
+        }
+        clock.set(end);
+    }
+
+    private record Task(long due, long sequence, Runnable task) implements Comparable<Task> {
+
+        @Override
+        public int compareTo(Task other) {
+            int byDue = Long.compare(due, other.due);
+            return byDue != 0 ? byDue : Long.compare(sequence, other.sequence);
+        }
+    }
+}
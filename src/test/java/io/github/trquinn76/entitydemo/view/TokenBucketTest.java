@@ -0,0 +1,94 @@
+package io.github.trquinn76.entitydemo.view;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTest {
+
+    private static final double DELTA = 1e-9;
+    // the time until a token is available is rounded up from a fraction of a token.
+    private static final double NANOS_DELTA = 10.0;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000L);
+
+    @Test
+    void admitsBurstThenRate() {
+        TokenBucket bucket = new TokenBucket(2.0, 3, clock::get);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        advance(Duration.ofMillis(490));
+        assertFalse(bucket.tryAcquire());
+        advance(Duration.ofMillis(20));
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void refillsUpToCapacity() {
+        TokenBucket bucket = new TokenBucket(2.0, 2, clock::get);
+        bucket.tryAcquire();
+        advance(Duration.ofSeconds(10));
+
+        assertEquals(1.0, bucket.fill(), DELTA);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void chargesIntoDebt() {
+        TokenBucket bucket = new TokenBucket(1.0, 1, clock::get);
+        bucket.charge();
+        bucket.charge();
+        bucket.charge();
+
+        assertEquals(0.0, bucket.fill(), DELTA);
+        // two tokens owed, and one more to be taken.
+        assertEquals(Duration.ofSeconds(3).toNanos(), bucket.nanosUntilAvailable(), NANOS_DELTA);
+        advance(Duration.ofMillis(2990));
+        assertFalse(bucket.tryAcquire());
+        advance(Duration.ofMillis(20));
+        assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    void releasesUpToCapacity() {
+        TokenBucket bucket = new TokenBucket(1.0, 2, clock::get);
+        assertTrue(bucket.tryAcquire());
+        assertEquals(0.5, bucket.fill(), DELTA);
+        bucket.release();
+        assertEquals(1.0, bucket.fill(), DELTA);
+        bucket.release();
+        assertEquals(1.0, bucket.fill(), DELTA);
+    }
+
+    @Test
+    void measuresTimeUntilAvailable() {
+        TokenBucket bucket = new TokenBucket(4.0, 1, clock::get);
+        assertEquals(0L, bucket.nanosUntilAvailable());
+        bucket.tryAcquire();
+        assertEquals(Duration.ofMillis(250).toNanos(), bucket.nanosUntilAvailable(), NANOS_DELTA);
+        advance(Duration.ofMillis(100));
+        assertEquals(Duration.ofMillis(150).toNanos(), bucket.nanosUntilAvailable(), NANOS_DELTA);
+    }
+
+    @Test
+    void rejectsInvalidLimits() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0.0, 1, clock::get));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1.0, 0, clock::get));
+    }
+
+    private void advance(Duration duration) {
+        clock.addAndGet(duration.toNanos());
+    }
+}
@@ -0,0 +1,121 @@
+package io.github.trquinn76.entitydemo.view;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class UiUpdateSchedulerTest {
+
+    private static final Duration FRAME_BUDGET = Duration.ofMillis(50);
+
+    private final AtomicLong clock = new AtomicLong(1_000_000L);
+    private final ManualScheduler scheduler = new ManualScheduler(clock);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UiUpdateSchedulerFactory factory = new UiUpdateSchedulerFactory(FRAME_BUDGET, meterRegistry,
+            clock::get, scheduler);
+    private final AttributeSession session = new AttributeSession();
+    private final AccessUi ui = new AccessUi(session);
+    private final UiUpdateScheduler updateScheduler = factory.create(ui);
+
+    private final List<String> applied = new ArrayList<>();
+
+    @Test
+    void mergesUpdatesWithSameKey() {
+        updateScheduler.schedule("label", () -> applied.add("first label"));
+        updateScheduler.schedule(() -> applied.add("marker"));
+        updateScheduler.schedule("label", () -> applied.add("second label"));
+        scheduler.advance(Duration.ZERO);
+
+        // in the order they were last scheduled.
+        assertEquals(List.of("marker", "second label"), applied);
+        assertEquals(3.0, meterRegistry.counter("entitydemo.ui.updates.scheduled").count());
+        assertEquals(1.0, meterRegistry.counter("entitydemo.ui.updates.merged").count());
+    }
+
+    @Test
+    void keepsUpdatesWithoutKey() {
+        updateScheduler.schedule(() -> applied.add("first"));
+        updateScheduler.schedule(() -> applied.add("second"));
+        scheduler.advance(Duration.ZERO);
+
+        assertEquals(List.of("first", "second"), applied);
+        assertEquals(0.0, meterRegistry.counter("entitydemo.ui.updates.merged").count());
+    }
+
+    @Test
+    void accessesUiAtMostOncePerFrameBudget() {
+        updateScheduler.schedule(() -> applied.add("first"));
+        scheduler.advance(Duration.ZERO);
+        assertEquals(1, ui.getAccesses());
+
+        // the budget since the last push has not passed, so these wait for it, and are applied together.
+        updateScheduler.schedule(() -> applied.add("second"));
+        scheduler.advance(Duration.ofMillis(30));
+        updateScheduler.schedule(() -> applied.add("third"));
+        scheduler.advance(Duration.ofMillis(19));
+        assertEquals(1, ui.getAccesses());
+        assertEquals(List.of("first"), applied);
+
+        scheduler.advance(Duration.ofMillis(1));
+        assertEquals(2, ui.getAccesses());
+        assertEquals(List.of("first", "second", "third"), applied);
+        assertEquals(2.0, meterRegistry.counter("entitydemo.ui.pushes").count());
+    }
+
+    @Test
+    void appliesRestOfBatchWhenUpdateFails() {
+        updateScheduler.schedule(() -> applied.add("before"));
+        updateScheduler.schedule(() -> {
+            throw new IllegalStateException("update failed");
+        });
+        updateScheduler.schedule(() -> applied.add("after"));
+        scheduler.advance(Duration.ZERO);
+
+        assertEquals(List.of("before", "after"), applied);
+        assertEquals(1, session.getErrors().size());
+        assertEquals("update failed", session.getErrors().get(0).getMessage());
+    }
+
+    @Test
+    void dropsUpdatesOfDetachedUi() {
+        ui.detach();
+        updateScheduler.schedule(() -> applied.add("update"));
+        scheduler.advance(Duration.ZERO);
+
+        assertEquals(List.of(), applied);
+        assertEquals(0.0, meterRegistry.counter("entitydemo.ui.pushes").count());
+    }
+
+    @Test
+    void reportsPushesOverLastSecond() {
+        for (int i = 0; i < 4; i++) {
+            updateScheduler.schedule(() -> applied.add("update"));
+            scheduler.advance(FRAME_BUDGET);
+        }
+        // the rate is only reported once the window has passed.
+        assertEquals(0.0, factory.getPushesPerSecond());
+
+        scheduler.advance(Duration.ofMillis(800));
+        assertEquals(4.0, factory.getPushesPerSecond(), 1e-9);
+
+        // nothing was pushed in the following window.
+        scheduler.advance(Duration.ofSeconds(1));
+        assertEquals(0.0, factory.getPushesPerSecond());
+    }
+
+    @Test
+    void reportsNoPushesAfterIdlePeriod() {
+        updateScheduler.schedule(() -> applied.add("update"));
+        scheduler.advance(Duration.ofSeconds(3));
+
+        // the push was more than a second ago.
+        assertEquals(0.0, factory.getPushesPerSecond());
+    }
+}